@@ -26,7 +26,7 @@ public class Bean {
 	private static final double SKILL_STDEV = 1.5;		// Math.sqrt(SLOT_COUNT * 0.5 * (1 - 0.5));
 
 	@FilterField private boolean isLuck;
-	@FilterField private Random rand;
+	@FilterField private BeanRandom rand;
 	@FilterField long skill;
 
 	private int xpos;
@@ -39,6 +39,17 @@ public class Bean {
 	 * @param rand      the random number generator
 	 */
 	Bean(boolean isLuck, Random rand) {
+		this(isLuck, new JdkBeanRandom(rand), -1, 0, 0);
+	}
+
+	/**
+	 * Constructor - creates a bean in either luck mode or skill mode. Many beans
+	 * can share one generator, instead of each bean creating and seeding its own.
+	 * 
+	 * @param isLuck	whether the bean is in luck mode
+	 * @param rand      the random number generator
+	 */
+	Bean(boolean isLuck, BeanRandom rand) {
 		this(isLuck, rand, -1, 0, 0);
 	}
 
@@ -51,10 +62,22 @@ public class Bean {
 	 * @param ypos		the starting y position of the bean, negative #s corrected to 0
 	 */
 	Bean(boolean isLuck, Random rand, long skill, int xpos, int ypos) {
+		this(isLuck, new JdkBeanRandom(rand), skill, xpos, ypos);
+	}
+
+	/**
+	 * Constructor allowing injection of all dependencies/state
+	 * @param isLuck    whether the bean is in luck mode
+	 * @param rand      the random number generator
+	 * @param skill		the skill of the bean, or a negative number to autogenerate skill
+	 * @param xpos		the starting x position of the bean, negative #s corrected to 0
+	 * @param ypos		the starting y position of the bean, negative #s corrected to 0
+	 */
+	Bean(boolean isLuck, BeanRandom rand, long skill, int xpos, int ypos) {
 		this.isLuck = isLuck;
 		this.rand = rand;
 		if (skill < 0) {
-			this.skill = Math.round(rand.nextGaussian() * SKILL_STDEV + SKILL_AVERAGE);
+			this.skill = generateSkill(rand);
 		} else {
 			this.skill = skill;
 		}
@@ -71,6 +94,30 @@ public class Bean {
 		this.resetPosition();
 	}
 
+	/**
+	 * Sets up a bean that is being reused as if it had just been created with
+	 * Bean(isLuck, rand). See BeanPool.
+	 * 
+	 * @param isLuck	whether the bean is in luck mode
+	 * @param rand      the random number generator
+	 */
+	void reinit(boolean isLuck, BeanRandom rand) {
+		this.isLuck = isLuck;
+		this.rand = rand;
+		this.skill = generateSkill(rand);
+		this.resetPosition();
+	}
+
+	/**
+	 * Draws a skill level from the normal distribution used for new beans.
+	 * 
+	 * @param rand the random number generator
+	 * @return the generated skill level
+	 */
+	static long generateSkill(BeanRandom rand) {
+		return Math.round(rand.nextGaussian() * SKILL_STDEV + SKILL_AVERAGE);
+	}
+
 	/**
 	 * @return the current x position of the bean
 	 */
@@ -110,6 +157,59 @@ public class Bean {
 		return goesRight;
 	}
 
+	/**
+	 * moves the Bean down the given number of pegs at once
+	 * in luck mode the number of right turns is drawn with countRights
+	 * in skill mode it is computed directly with skillRights
+	 * @param pegs number of pegs to fall through
+	 */
+	public void fall(int pegs) {
+		if (isLuck) {
+			xpos += countRights(rand, pegs);
+		} else {
+			xpos += skillRights(xpos, skill, pegs);
+		}
+		ypos += pegs;
+	}
+
+	/**
+	 * Counts how many of the given number of pegs a skill bean goes right on.
+	 * goRight() goes right while xpos &lt; skill, so a bean goes right until it
+	 * reaches its skill or runs out of pegs, and never if it is already past it.
+	 * 
+	 * @param xpos  the current x position of the bean
+	 * @param skill the skill of the bean
+	 * @param pegs  number of pegs
+	 * @return number of pegs on which the bean goes right
+	 */
+	static int skillRights(int xpos, long skill, int pegs) {
+		if (xpos >= skill) {
+			return 0;
+		}
+		return (int) Math.min(skill - xpos, pegs);
+	}
+
+	/**
+	 * Counts how many of the given number of pegs a luck bean goes right on. Every
+	 * bit of a random long is a fair coin flip, so instead of one nextBoolean()
+	 * per peg this takes a single 64-bit draw for up to 64 pegs and counts the
+	 * bits under a mask of the peg count. Taller boards take one draw per 64 pegs.
+	 * 
+	 * @param rand the random number generator
+	 * @param pegs number of pegs
+	 * @return number of pegs on which the bean goes right
+	 */
+	static int countRights(BeanRandom rand, int pegs) {
+		int rights = 0;
+		for (; pegs >= Long.SIZE; pegs -= Long.SIZE) {
+			rights += Long.bitCount(rand.nextLong());
+		}
+		if (pegs > 0) {
+			rights += Long.bitCount(rand.nextLong() & ((1L << pegs) - 1));
+		}
+		return rights;
+	}
+
 	/**
 	 * resets the bean to the initial position (0,0)
 	 */
@@ -1,35 +1,57 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.concurrent.TimeUnit;
 import javax.swing.*;
 
 public class BeanCounterGUI {
 
 	public static void showUsage() {
-		System.out.println("Usage: java BeanCounterGUI <number of beans> <luck | skill>");
+		System.out.println("Usage: java BeanCounterGUI <number of beans> <luck | skill> [--seed <seed>] [--rate <k>]"
+				+ " [--step <ms>]");
 		System.out.println("Example: java BeanCounterGUI 400 luck");
+		System.out.println("Example: java BeanCounterGUI 4000 luck --rate 4");
+		System.out.println("Example: java BeanCounterGUI 400 skill --step 1000");
 	}
 
 	/**
 	 * Main method. Creates the main frame for the app.
 	 * 
 	 * @param args args[0] is an integer bean count, args[1] is a string which is
-	 *             either luck or skill.
+	 *             either luck or skill, optionally followed by --seed and a seed
+	 *             to make the run reproducible, by --rate and the number of
+	 *             beans to drop per step and by --step and the number of
+	 *             milliseconds beans take to move down one row.
 	 */
 
 	public static void main(String[] args) {
-		if (args.length != 2) {
+		if (args.length < 2 || args.length % 2 != 0) {
 			showUsage();
 			return;
 		}
 
 		int beanCount;
+		int dropRate = 1;
+		long stepMillis = TimeUnit.NANOSECONDS.toMillis(MainPanel.STEP_DURATION);
+		BeanRandom rand = new XoroshiroBeanRandom();
 		try {
 			beanCount = Integer.parseInt(args[0]);
+			for (int i = 2; i < args.length; i += 2) {
+				if (args[i].equals("--seed")) {
+					rand = new XoroshiroBeanRandom(Long.parseLong(args[i + 1]));
+				} else if (args[i].equals("--rate")) {
+					dropRate = Integer.parseInt(args[i + 1]);
+				} else if (args[i].equals("--step")) {
+					stepMillis = Long.parseLong(args[i + 1]);
+				} else {
+					showUsage();
+					return;
+				}
+			}
 		} catch (NumberFormatException ne) {
 			showUsage();
 			return;
 		}
-		if (beanCount < 0) {
+		if (beanCount < 0 || dropRate < 1 || stepMillis < 1) {
 			showUsage();
 			return;
 		}
@@ -45,7 +67,7 @@ public class BeanCounterGUI {
 		}
 		
 		// Create the main frame for the app
-		new MainFrame(beanCount, luck);
+		new MainFrame(beanCount, luck, rand, dropRate, TimeUnit.MILLISECONDS.toNanos(stepMillis));
 	}
 
 }
@@ -1,7 +1,12 @@
 import gov.nasa.jpf.annotation.FilterField;
 import gov.nasa.jpf.vm.Verify;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 /**
  * Code by @author Wonsun Ahn
@@ -31,10 +36,43 @@ import java.util.*;
 public class BeanCounterLogic {
 
 	@FilterField private List<Bean> remainingBeans;
-	@FilterField private List<Bean> flightBeans;
-	@FilterField private List<List<Bean>> slots;
+	private int remainingBeansCursor;	// index of the next bean to drop in remainingBeans
+	// Remaining beans that do not exist yet are made by beanSource as they are
+	// dropped, before any of the beans in remainingBeans
+	@FilterField private IntFunction<Bean> beanSource;
+	private int sourceCount;			// number of beans beanSource makes
+	private int sourceCursor;			// index of the next bean beanSource makes
+	@FilterField private BeanPool beanPool = new BeanPool();	// beans the machine let go of
+	// Slot lists are only created once a bean lands in them, in a window that
+	// only covers the slots beans have landed in
+	@FilterField private SlotLists slots;
+	@FilterField private SlotHistogram slotCounts;	// kept up to date as beans land or are removed
+	@FilterField private SlotStatistics stats;	// likewise
 	private int slotCount;
 
+	// In-flight beans live in a ring buffer indexed by row, as all of them move
+	// down one row per step. Each row is a bucket of dropRate entries, the first
+	// rowBeans[row] of which hold the beans of that row in the order they were
+	// dropped, so a bean keeps its place in its bucket as it falls.
+	@FilterField private Bean[] flightBeans;
+	@FilterField private int[] rowBeans;
+	private int dropRate = 1;			// beans dropped at the top per step
+	private int flightTop;				// ring index of row 0
+	private int flightCount;
+	private int flightLow;				// all in-flight beans are in rows
+	private int flightHigh;				// flightLow through flightHigh - 1
+
+	// Counts-only mode keeps remaining and in-flight beans as primitives instead
+	@FilterField private boolean isLuck;
+	@FilterField private BeanRandom rand;
+	@FilterField private BeanStore remainingStore;
+	private int remainingCursor;		// index of the next bean to drop in remainingStore
+	private long beanIndexBase;			// bean index of the first bean in remainingStore
+	@FilterField private int[] flightX;		// bucketed like flightBeans
+	@FilterField private int[] flightSkill;
+	@FilterField private BeanRandom[] flightRand;
+	private boolean bulkLuck;			// move luck beans with LuckStepKernel
+
 	// No bean in that particular Y coordinate
 	public static final int NO_BEAN_IN_YPOS = -1;
 
@@ -53,8 +91,10 @@ public class BeanCounterLogic {
 	 * @param slotCount number of slots in the machine, or null
 	 * @param remainingBeans initial state for remaining beans, or null
 	 * @param flightBeans initial state for beans in flight, or null
+	 *              each bean is placed in the row of its y position, which must be unique
 	 * @param slots initial state for slots, or null
-	 *              null lists will start as empty lists, except individual slots being null, which is not handled
+	 *              null lists, and null individual slots, will start as empty lists;
+	 *              the machine takes the lists over, so they must not be changed after
 	 */
 	BeanCounterLogic(int slotCount, List<Bean> remainingBeans, List<Bean> flightBeans, List<List<Bean>> slots) {
 		// initialize global vars
@@ -63,30 +103,128 @@ public class BeanCounterLogic {
 		} else {
 			this.remainingBeans = remainingBeans;
 		}
-		if (flightBeans == null) {
-			this.flightBeans = new ArrayList<>();
-		} else {
-			this.flightBeans = flightBeans;
+		this.flightBeans = new Bean[Math.max(slotCount, 1)];
+		this.rowBeans = new int[this.flightBeans.length];
+		if (flightBeans != null) {
+			for (Bean bean : flightBeans) {
+				int row = Math.min(Math.max(bean.getYpos(), 0), this.flightBeans.length - 1);
+				if (rowBeans[row] != 0) {
+					throw new IllegalArgumentException("More than one in-flight bean in row " + row);
+				}
+				this.flightBeans[row] = bean;
+				rowBeans[row] = 1;
+				flightLow = flightCount == 0 ? row : Math.min(flightLow, row);
+				flightHigh = Math.max(flightHigh, row + 1);
+				flightCount++;
+			}
 		}
-		if (slots == null) {
-			this.slots = new ArrayList<>();
-			// initialize each slot
-			for (int i = 0; i < slotCount; i++) {
-				this.slots.add(new ArrayList<>());
+		// each slot starts out without a list, see SlotLists.getOrCreate(int)
+		this.slots = new SlotLists(slotCount);
+		if (slots != null) {
+			for (int i = 0; i < slots.size(); i++) {
+				if (slots.get(i) != null) {
+					this.slots.put(i, slots.get(i));
+				}
 			}
-		} else {
-			this.slots = slots;
 		}
 
 		this.slotCount = slotCount;
+		this.stats = new SlotStatistics(slotCount);
+		this.slotCounts = new SlotHistogram(slotCount, true);
+		for (int i = this.slots.getLowSlot(); i < this.slots.getHighSlot(); i++) {
+			if (this.slots.get(i) != null) {
+				recordSlot(i, this.slots.get(i).size());
+			}
+		}
 	}
 
+	/**
+	 * Constructor - creates a counts-only machine. Each slot is a single counter
+	 * and beans are released as soon as they land, so memory stays flat no matter
+	 * how many beans are dropped. Remaining and in-flight beans are not Bean
+	 * objects either: they are kept in a BeanStore and parallel primitive arrays,
+	 * and all luck decisions come from the rand passed in. Every bean has an
+	 * index, counting from 0 at reset, and gets rand.forBean(index), so with a
+	 * CounterBeanRandom each bean's path depends only on the seed and its index,
+	 * whether the machine is stepped, completed or run in parallel. Since landed
+	 * beans are gone, repeat() recreates them: a skill bean in slot i comes back
+	 * with skill i (which lands it in slot i again) and a luck bean comes back as
+	 * a fresh luck bean.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether beans are in luck mode
+	 * @param rand      the random number generator for all beans
+	 */
+	BeanCounterLogic(int slotCount, boolean isLuck, Random rand) {
+		this(slotCount, isLuck, new JdkBeanRandom(rand));
+	}
+
+	/**
+	 * Constructor - creates a counts-only machine that draws from a BeanRandom.
+	 * See BeanCounterLogic(int, boolean, Random).
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether beans are in luck mode
+	 * @param rand      the random number generator for all beans
+	 */
+	BeanCounterLogic(int slotCount, boolean isLuck, BeanRandom rand) {
+		this(slotCount, new BeanStore(isLuck), rand);
+	}
+
+	/**
+	 * Constructor - creates a counts-only machine that keeps its remaining beans
+	 * in the given store, for example a MappedBeanStore for populations that do
+	 * not fit in the heap. The beans are in the mode of the store. See
+	 * BeanCounterLogic(int, boolean, Random).
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param store     an empty store for the remaining beans
+	 * @param rand      the random number generator for all beans
+	 */
+	BeanCounterLogic(int slotCount, BeanStore store, BeanRandom rand) {
+		this.slotCounts = new SlotHistogram(slotCount, true);
+		this.stats = new SlotStatistics(slotCount);
+		this.slotCount = slotCount;
+		this.isLuck = store.isLuck();
+		this.rand = rand;
+		this.remainingStore = store;
+		this.flightX = new int[Math.max(slotCount, 1)];
+		this.flightSkill = new int[flightX.length];
+		this.flightRand = new BeanRandom[flightX.length];
+		this.rowBeans = new int[flightX.length];
+	}
+
+	/**
+	 * Returns read-only views of the beans in each slot. The slot counts and
+	 * statistics are kept up to date by the machine itself, so the slots can
+	 * only be changed through it. This makes a view of every slot, so it is
+	 * meant for tests and small boards.
+	 * 
+	 * @return the slots, or null in counts-only mode
+	 */
 	public List<List<Bean>> getSlots() {
-		return this.slots;
+		if (isCountsOnly()) {
+			return null;
+		}
+		List<List<Bean>> views = new ArrayList<>(slotCount);
+		for (int i = 0; i < slotCount; i++) {
+			List<Bean> slot = slots.get(i);
+			views.add(slot == null ? Collections.<Bean>emptyList() : Collections.unmodifiableList(slot));
+		}
+		return Collections.unmodifiableList(views);
+	}
+
+	/**
+	 * Returns whether the machine only counts landed beans instead of keeping them.
+	 * 
+	 * @return whether the machine is in counts-only mode
+	 */
+	public boolean isCountsOnly() {
+		return slots == null;
 	}
 
 	public int inFlightBeanCount() {
-		return flightBeans.size();
+		return flightCount;
 	}
 
 	/**
@@ -95,7 +233,10 @@ public class BeanCounterLogic {
 	 * @return number of beans remaining
 	 */
 	public int getRemainingBeanCount() {
-		return remainingBeans.size();
+		if (isCountsOnly()) {
+			return remainingStore.size() - remainingCursor;
+		}
+		return sourceCount - sourceCursor + remainingBeans.size() - remainingBeansCursor;
 	}
 
 	/**
@@ -105,13 +246,152 @@ public class BeanCounterLogic {
 	 * @return the x-coordinate of the in-flight bean
 	 */
 	public int getInFlightBeanXPos(int yPos) {
-		int x = NO_BEAN_IN_YPOS;
-		for (Bean bean : flightBeans) {
-			if (bean.getYpos() == yPos) {
-				x = bean.getXpos();
+		return getInFlightBeanXPos(yPos, 0);
+	}
+
+	/**
+	 * Returns the number of in-flight beans at the provided y-coordinate, at
+	 * most the drop rate.
+	 * 
+	 * @param yPos the y-coordinate in which to count the in-flight beans
+	 * @return the number of in-flight beans
+	 */
+	public int getInFlightBeanCount(int yPos) {
+		if (yPos < 0 || yPos >= slotCount) {
+			return 0;
+		}
+		return rowBeans[rowIndex(yPos)];
+	}
+
+	/**
+	 * Returns the x-coordinate for the ith in-flight bean at the provided
+	 * y-coordinate, counting in the order the beans were dropped.
+	 * 
+	 * @param yPos the y-coordinate in which to look for the in-flight bean
+	 * @param i    which of the beans at that y-coordinate, from 0
+	 * @return the x-coordinate of the in-flight bean
+	 */
+	public int getInFlightBeanXPos(int yPos, int i) {
+		if (i < 0 || i >= getInFlightBeanCount(yPos)) {
+			return NO_BEAN_IN_YPOS;
+		}
+		int b = rowIndex(yPos) * dropRate + i;
+		return isCountsOnly() ? flightX[b] : flightBeans[b].getXpos();
+	}
+
+	/**
+	 * Returns the number of beans dropped at the top of the machine per step.
+	 * 
+	 * @return the drop rate
+	 */
+	public int getDropRate() {
+		return dropRate;
+	}
+
+	/**
+	 * Sets the number of beans dropped at the top of the machine per step. Each
+	 * row then holds up to that many beans, so a run takes about beanCount /
+	 * dropRate steps instead of beanCount. The new rate applies from the next
+	 * drop; beans in flight keep their places.
+	 * 
+	 * @param dropRate the number of beans per step, at least 1
+	 */
+	public void setDropRate(int dropRate) {
+		if (dropRate < 1) {
+			throw new IllegalArgumentException("Drop rate must be at least 1, got " + dropRate);
+		}
+		for (int row = 0; row < rowBeans.length; row++) {
+			if (rowBeans[row] > dropRate) {
+				throw new IllegalStateException("A row holds " + rowBeans[row] + " beans, more than " + dropRate);
 			}
 		}
-		return x;
+		int size = rowBeans.length * dropRate;
+		if (isCountsOnly()) {
+			flightX = (int[]) rebucket(flightX, new int[size], dropRate);
+			flightSkill = (int[]) rebucket(flightSkill, new int[size], dropRate);
+			flightRand = (BeanRandom[]) rebucket(flightRand, new BeanRandom[size], dropRate);
+		} else {
+			flightBeans = (Bean[]) rebucket(flightBeans, new Bean[size], dropRate);
+		}
+		this.dropRate = dropRate;
+	}
+
+	/**
+	 * Makes a counts-only luck machine move each row of in-flight beans with
+	 * LuckStepKernel, which draws the random bits for 64 beans at once from the
+	 * machine's generator instead of one bit per bean from each bean's own
+	 * stream. Bulk stepping gives the same distribution, but not the same paths
+	 * as stepping bean by bean, so it is off by default. It pays off with a high
+	 * drop rate, when rows hold many beans.
+	 * 
+	 * @param bulkLuck whether to step luck beans in bulk
+	 */
+	public void setBulkLuck(boolean bulkLuck) {
+		if (bulkLuck && !(isCountsOnly() && isLuck)) {
+			throw new IllegalStateException("Only counts-only machines in luck mode step in bulk");
+		}
+		this.bulkLuck = bulkLuck;
+	}
+
+	/**
+	 * Copies the in-flight entries of every row into buckets of a new size.
+	 * 
+	 * @param from     the bucketed array with the current drop rate
+	 * @param to       an array for the new drop rate
+	 * @param newRate  the new drop rate
+	 * @return to
+	 */
+	private Object rebucket(Object from, Object to, int newRate) {
+		for (int row = 0; row < rowBeans.length; row++) {
+			System.arraycopy(from, row * dropRate, to, row * newRate, rowBeans[row]);
+		}
+		return to;
+	}
+
+	/**
+	 * Returns the index in the in-flight ring buffer of the given row.
+	 * 
+	 * @param yPos the row
+	 * @return the index of the row in the ring buffer
+	 */
+	private int rowIndex(int yPos) {
+		int i = flightTop + yPos;
+		return i < slotCount ? i : i - slotCount;
+	}
+
+	/**
+	 * Moves the top of the in-flight ring buffer up one row, so that every bean
+	 * moves down one row without being touched. The row that was at the bottom,
+	 * which must be empty, becomes the new row 0.
+	 */
+	private void rotateFlight() {
+		flightTop = flightTop == 0 ? slotCount - 1 : flightTop - 1;
+		if (flightCount == 0) {
+			flightLow = 0;
+			flightHigh = 0;
+		} else {
+			flightLow++;
+			flightHigh = Math.min(flightHigh + 1, slotCount);
+		}
+	}
+
+	/**
+	 * Records that a bean was put in row 0.
+	 */
+	private void dropIntoFlight() {
+		flightCount++;
+		flightLow = 0;
+		flightHigh = Math.max(flightHigh, 1);
+	}
+
+	/**
+	 * Records that the in-flight ring buffer was emptied.
+	 */
+	private void clearFlight() {
+		flightTop = 0;
+		flightCount = 0;
+		flightLow = 0;
+		flightHigh = 0;
 	}
 
 	/**
@@ -121,7 +401,11 @@ public class BeanCounterLogic {
 	 * @return number of beans in slot
 	 */
 	public int getSlotBeanCount(int i) {
-		return slots.get(i).size();
+		if (isCountsOnly()) {
+			return (int) slotCounts.get(i);
+		}
+		List<Bean> slot = slots.get(i);
+		return slot == null ? 0 : slot.size();
 	}
 	
 	/**
@@ -129,71 +413,85 @@ public class BeanCounterLogic {
 	 * 
 	 * @return number of beans in all slots
 	 */
-	private int totalSlotBeanCount() {
-		int total = 0;
-		for (List<Bean> slot : slots) {
-			total += slot.size();
-		}
-		return total;
+	private long totalSlotBeanCount() {
+		return stats.getCount();
 	}
 	
 	/**
-	 * Returns the total number of beans in all slots after mmultiplying the
-	 * slot number by the the amount of beans in the slot to create a weighted
-	 * number to represent the slot
-	 * 
-	 * @return weighted number of beans in slot
-	 */
-	private double getWeightedSlotBeanCount() {
-		double total = 0.0;
-		int i = 0;
-		for (List<Bean> slot : slots) {
-			total += slot.size() * i;
-			i += 1;
-		}
-		return total;
-	}
-	
-	/**
-	 * NOTE * I think we can use the totalSlotBeanCount and weightedSlotBeanCount
-	 * 		  for this method
-	 * Calculates the average slot bean count.
+	 * Calculates the average slot bean count. This is read from running
+	 * statistics, so it is O(1).
 	 * 
 	 * @return average of all slot bean counts
 	 */
 	public double getAverageSlotBeanCount(BeanCounterLogic logic) {
-		// TODO: Implement
-		int totalSlotBeans = logic.totalSlotBeanCount();
-		double weightedSlotBeanCount = logic.getWeightedSlotBeanCount();
-				
-		if (totalSlotBeans > 0) {
-			return weightedSlotBeanCount / totalSlotBeans;
-		}
-				
-		return 0.0;
+		return logic.stats.getMean();
 	}
 	
 	public double getAverageSlotBeanCount() {
 		return getAverageSlotBeanCount(this);
 	}
 
+	/**
+	 * Returns the total number of beans in all slots.
+	 * 
+	 * @return number of beans in all slots
+	 */
+	public long getTotalSlotBeanCount() {
+		return stats.getCount();
+	}
+
+	/**
+	 * Returns the sum of the slot numbers of all beans in slots.
+	 * 
+	 * @return sum of slot numbers
+	 */
+	public double getSlotBeanSum() {
+		return stats.getSum();
+	}
+
+	/**
+	 * Returns the population variance of the slot numbers of all beans in slots.
+	 * 
+	 * @return variance of slot numbers
+	 */
+	public double getSlotBeanVariance() {
+		return stats.getVariance();
+	}
+
+	/**
+	 * Returns the population standard deviation of the slot numbers of all beans
+	 * in slots.
+	 * 
+	 * @return standard deviation of slot numbers
+	 */
+	public double getSlotBeanStandardDeviation() {
+		return stats.getStandardDeviation();
+	}
+
+	/**
+	 * Returns the skewness of the slot numbers of all beans in slots.
+	 * 
+	 * @return skewness of slot numbers
+	 */
+	public double getSlotBeanSkewness() {
+		return stats.getSkewness();
+	}
+
+	/**
+	 * Returns the excess kurtosis of the slot numbers of all beans in slots.
+	 * 
+	 * @return excess kurtosis of slot numbers
+	 */
+	public double getSlotBeanKurtosis() {
+		return stats.getKurtosis();
+	}
+
 	/**
 	 * Removes the lower half of all beans currently in slots, keeping only the
 	 * upper half.
 	 */
 	public void upperHalf() {
-		int beanCount = totalSlotBeanCount();
-		if (beanCount == 0) {
-			// if there are no beans in the slots do nothing
-			return;
-		}
-		int numToRemove = beanCount / 2;
-		int currentSlotNumber = 0;
-
-		while (numToRemove > 0) {
-			numToRemove = removeFromSlot(numToRemove, currentSlotNumber);
-			currentSlotNumber++;
-		}
+		keepRange(0.5, 1.0);
 	}
 
 	/**
@@ -201,18 +499,85 @@ public class BeanCounterLogic {
 	 * lower half.
 	 */
 	public void lowerHalf() {
-		int beanCount = totalSlotBeanCount();
-		if (beanCount == 0) {
-			// if there are no beans in the slots do nothing
-			return;
+		keepRange(0.0, 0.5);
+	}
+
+	/**
+	 * Keeps only the beans currently in slots whose rank, counting from the
+	 * lowest slot, lies between the given quantiles. For example keepRange(0.25,
+	 * 0.75) keeps the middle half. floor(count * lowQuantile) beans are removed
+	 * from the bottom and floor(count * (1 - highQuantile)) from the top. The slot
+	 * index finds the cut slots. Whole slots beyond them are handed to the bean
+	 * pool at once, in constant time per slot. Only the cut slots are truncated,
+	 * which takes time in the number of beans they hold, so the cost does not
+	 * depend on the number of beans in the other slots.
+	 * 
+	 * @param lowQuantile  fraction of beans to remove from the lowest slots
+	 * @param highQuantile 1 minus the fraction of beans to remove from the highest slots
+	 */
+	public void keepRange(double lowQuantile, double highQuantile) {
+		if (!(0.0 <= lowQuantile && lowQuantile <= highQuantile && highQuantile <= 1.0)) {
+			throw new IllegalArgumentException("Quantiles must satisfy 0 <= low <= high <= 1, got "
+					+ lowQuantile + " and " + highQuantile);
+		}
+		long beanCount = totalSlotBeanCount();
+		long removeBottom = (long) (beanCount * lowQuantile);
+		long removeTop = (long) (beanCount * (1.0 - highQuantile));
+		if (removeBottom > 0) {
+			// the slot index tells which slot the last bean to remove is in
+			int cut = slotCounts.findSlot(removeBottom - 1);
+			long below = slotCounts.prefixCount(cut - 1);
+			for (int i = slotCounts.getLowSlot(); i < cut; i++) {
+				removeFromSlot(Long.MAX_VALUE, i);
+			}
+			removeFromSlot(removeBottom - below, cut);
+		}
+		if (removeTop > 0) {
+			// and which slot the first bean to remove from the top is in
+			int cut = slotCounts.findSlot(beanCount - removeBottom - removeTop);
+			for (int i = slotCounts.getHighSlot() - 1; i > cut; i--) {
+				removeFromSlot(Long.MAX_VALUE, i);
+			}
+			removeFromSlot(slotCounts.prefixCount(cut) - (beanCount - removeBottom - removeTop), cut);
 		}
-		int numToRemove = beanCount / 2;
-		int currentSlotNumber = slotCount - 1;
+	}
 
-		while (numToRemove > 0) {
-			numToRemove = removeFromSlot(numToRemove, currentSlotNumber);
-			currentSlotNumber--;
+	/**
+	 * Returns the number of beans in slots 0 through k, in O(log slots).
+	 * 
+	 * @param k the last slot to count
+	 * @return number of beans in slots 0 through k
+	 */
+	public long getSlotBeanCountUpTo(int k) {
+		return slotCounts.prefixCount(Math.min(k, slotCount - 1));
+	}
+
+	/**
+	 * Returns the slot that the given fraction of the beans in slots are below.
+	 * This is the slot of the bean with rank floor(count * p) counting from 0 at
+	 * the lowest slot (the highest bean for p = 1), found in O(log slots).
+	 * 
+	 * @param p the percentile as a fraction between 0 and 1
+	 * @return the slot, or -1 if there are no beans in slots
+	 */
+	public int getPercentileSlot(double p) {
+		if (p < 0.0 || p > 1.0) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 1, got " + p);
+		}
+		long beanCount = totalSlotBeanCount();
+		if (beanCount == 0) {
+			return -1;
 		}
+		return slotCounts.findSlot(Math.min((long) (beanCount * p), beanCount - 1));
+	}
+
+	/**
+	 * Returns the slot of the median bean in slots.
+	 * 
+	 * @return the median slot, or -1 if there are no beans in slots
+	 */
+	public int getMedianSlot() {
+		return getPercentileSlot(0.5);
 	}
 
 	/**
@@ -221,43 +586,216 @@ public class BeanCounterLogic {
 	 * @param currentSlotNumber index of the slot to remove from
 	 * @return the new value for numToRemove, aka the original value minus the # removed
 	 */
-	private int removeFromSlot(int numToRemove, int currentSlotNumber) {
+	private long removeFromSlot(long numToRemove, int currentSlotNumber) {
+		if (isCountsOnly()) {
+			long removed = Math.min(numToRemove, slotCounts.get(currentSlotNumber));
+			recordSlot(currentSlotNumber, -removed);
+			return numToRemove - removed;
+		}
 		List<Bean> currentSlot = slots.get(currentSlotNumber);
+		if (currentSlot == null) {
+			return numToRemove;
+		}
 		// if the number of beans in the current slot is <= than the number left to be
 		// removed then remove all in the current slot
-		if (currentSlot.size() <= numToRemove) {
-			numToRemove -= currentSlot.size();
-			currentSlot.clear();
+		int removed = (int) Math.min(currentSlot.size(), numToRemove);
+		if (removed == currentSlot.size()) {
+			// hand the whole list to the pool without touching its beans
+			slots.remove(currentSlotNumber);
+			beanPool.releaseAll(currentSlot);
 		} else {
-			while (numToRemove > 0) {
-				currentSlot.remove(0);
-				numToRemove--;
-			}
+			// truncate the front of the slot in one go
+			List<Bean> front = currentSlot.subList(0, removed);
+			beanPool.releaseAll(new ArrayList<>(front));
+			front.clear();
 		}
-		return numToRemove;
+		recordSlot(currentSlotNumber, -removed);
+		return numToRemove - removed;
 	}
 
 	/**
 	 * A hard reset. Initializes the machine with the passed beans. The machine
-	 * starts with one bean at the top.
+	 * starts with one bean at the top. A counts-only machine only copies the
+	 * skill of each bean into its BeanStore.
 	 */
 	public void reset(Bean[] beans) {
+		if (isCountsOnly()) {
+			// only the skills are kept, the Bean objects are not retained
+			clearStore();
+			for (Bean bean : beans) {
+				remainingStore.add(bean.skill);
+			}
+			dropFromStore();
+			return;
+		}
+		beanSource = null;
+		sourceCount = 0;
+		sourceCursor = 0;
+		refill(Arrays.asList(beans));
+		// if there are any beans put one at the top of the machine
+		dropFromRemaining();
+	}
+
+	/**
+	 * A hard reset with beans that are made as they are needed. Initializes the
+	 * machine with beanCount beans, where beanSource makes the ith bean when it
+	 * is dropped at the top, so no bean exists before it starts falling. The
+	 * beans the machine held before are released to getBeanPool(), so a source
+	 * that acquires its beans from there reuses them. The machine starts with
+	 * one bean at the top. A counts-only machine makes all the beans at once and
+	 * only copies their skills into its BeanStore.
+	 * 
+	 * @param beanCount  number of beans
+	 * @param beanSource makes the bean with the given index, from 0
+	 */
+	public void reset(int beanCount, IntFunction<Bean> beanSource) {
+		if (isCountsOnly()) {
+			clearStore();
+			for (int i = 0; i < beanCount; i++) {
+				remainingStore.add(beanSource.apply(i).skill);
+			}
+			dropFromStore();
+			return;
+		}
+		releaseBeans();
+		this.beanSource = beanSource;
+		sourceCount = beanCount;
+		sourceCursor = 0;
+		refill(Collections.<Bean>emptyList());
+		dropFromRemaining();
+	}
+
+	/**
+	 * Releases all beans in a machine that keeps Bean objects to its pool.
+	 * Beans removed by halving were already released when they were removed.
+	 */
+	private void releaseBeans() {
+		for (int j = remainingBeansCursor; j < remainingBeans.size(); j++) {
+			beanPool.release(remainingBeans.get(j));
+		}
+		for (int y = flightHigh - 1; y >= flightLow; y--) {
+			int row = rowIndex(y);
+			for (int j = 0; j < rowBeans[row]; j++) {
+				beanPool.release(flightBeans[row * dropRate + j]);
+			}
+		}
+		for (int i = slots.getLowSlot(); i < slots.getHighSlot(); i++) {
+			List<Bean> slot = slots.get(i);
+			for (int j = 0; slot != null && j < slot.size(); j++) {
+				beanPool.release(slot.get(j));
+			}
+		}
+	}
+
+	/**
+	 * Returns the pool that beans removed by halving, and all beans held before
+	 * reset(int, IntFunction), are released to.
+	 * 
+	 * @return the pool of beans this machine let go of
+	 */
+	public BeanPool getBeanPool() {
+		return beanPool;
+	}
+
+	/**
+	 * Empties the slots and the in-flight beans of a machine that keeps Bean
+	 * objects and replaces the beans in remainingBeans with the given beans.
+	 * Beans still to be made by beanSource are kept.
+	 * 
+	 * @param beans the beans to put in remainingBeans
+	 */
+	private void refill(Collection<Bean> beans) {
 		// clear all lists of beans
 		remainingBeans.clear();
-		flightBeans.clear();
-		for (List<Bean> slot : slots) {
-			slot.clear();
+		Arrays.fill(flightBeans, null);
+		Arrays.fill(rowBeans, 0);
+		clearFlight();
+		for (int i = slots.getLowSlot(); i < slots.getHighSlot(); i++) {
+			if (slots.get(i) != null) {
+				slots.get(i).clear();
+			}
 		}
+		clearSlotRecords();
 
 		// add given beans to remainingBeans
-		remainingBeans.addAll(Arrays.asList(beans));
-		// if there are any beans put one at the top of the machine
-		if (remainingBeans.size() > 0) {
-			for (Bean bean : remainingBeans) {
-				bean.resetPosition();
+		remainingBeans.addAll(beans);
+		remainingBeansCursor = 0;
+		for (Bean bean : remainingBeans) {
+			bean.resetPosition();
+		}
+	}
+
+	/**
+	 * Puts the next drop rate remaining beans at the top of the machine, or as
+	 * many as there are. Beans are taken by moving a cursor through
+	 * remainingBeans rather than removing them, so this is constant-time per bean.
+	 */
+	private void dropFromRemaining() {
+		int row = rowIndex(0);
+		while (rowBeans[row] < dropRate) {
+			Bean bean;
+			if (sourceCursor < sourceCount) {
+				bean = beanSource.apply(sourceCursor);
+				sourceCursor++;
+			} else if (remainingBeansCursor < remainingBeans.size()) {
+				bean = remainingBeans.get(remainingBeansCursor);
+				remainingBeansCursor++;
+			} else {
+				return;
 			}
-			Bean first = remainingBeans.remove(0);
-			flightBeans.add(first);
+			flightBeans[row * dropRate + rowBeans[row]] = bean;
+			rowBeans[row]++;
+			dropIntoFlight();
+		}
+	}
+
+	/**
+	 * A hard reset for counts-only machines. Initializes the machine with
+	 * beanCount newly generated beans without creating any Bean objects. The
+	 * machine starts with one bean at the top.
+	 * 
+	 * @param beanCount number of beans to generate
+	 */
+	public void reset(int beanCount) {
+		clearStore();
+		if (isLuck) {
+			remainingStore.addLuck(beanCount);
+		} else {
+			for (int i = 0; i < beanCount; i++) {
+				remainingStore.add(Bean.generateSkill(rand.forBean(i)));
+			}
+		}
+		dropFromStore();
+	}
+
+	/**
+	 * Empties the slots, the in-flight beans and the remaining beans of a
+	 * counts-only machine.
+	 */
+	private void clearStore() {
+		clearSlotRecords();
+		Arrays.fill(flightRand, null);
+		Arrays.fill(rowBeans, 0);
+		clearFlight();
+		remainingStore.clear();
+		remainingCursor = 0;
+		beanIndexBase = 0;
+	}
+
+	/**
+	 * Puts the next drop rate beans in the store of a counts-only machine at the
+	 * top of the machine, or as many as there are.
+	 */
+	private void dropFromStore() {
+		int row = rowIndex(0);
+		while (rowBeans[row] < dropRate && remainingCursor < remainingStore.size()) {
+			int i = row * dropRate + rowBeans[row];
+			flightX[i] = 0;
+			flightSkill[i] = remainingStore.getSkill(remainingCursor);
+			flightRand[i] = rand.forBean(beanIndexBase + remainingCursor);
+			rowBeans[row]++;
+			dropIntoFlight();
+			remainingCursor++;
 		}
 	}
 
@@ -267,13 +805,61 @@ public class BeanCounterLogic {
 	 * beginning, the machine starts with one bean at the top.
 	 */
 	public void repeat() {
-		List<Bean> beans = new ArrayList<>();
-		beans.addAll(remainingBeans);
-		beans.addAll(flightBeans);
-		for (List<Bean> slot : slots) {
-			beans.addAll(slot);
+		if (isCountsOnly()) {
+			// scooped beans get new indices, after all the ones used so far
+			beanIndexBase += remainingStore.size();
+			remainingStore.removeFirst(remainingCursor);
+			remainingCursor = 0;
+			// scoop the in-flight beans from the bottom row up, i.e. in drop order
+			for (int y = flightHigh - 1; y >= flightLow; y--) {
+				int row = rowIndex(y);
+				for (int j = 0; j < rowBeans[row]; j++) {
+					remainingStore.add(flightSkill[row * dropRate + j]);
+					flightRand[row * dropRate + j] = null;
+				}
+				rowBeans[row] = 0;
+			}
+			clearFlight();
+			// landed beans were released, so recreate them from the slot counts
+			for (int i = slotCounts.getLowSlot(); i < slotCounts.getHighSlot(); i++) {
+				for (long j = slotCounts.get(i); j > 0; j--) {
+					remainingStore.add(i);
+				}
+			}
+			clearSlotRecords();
+			dropFromStore();
+			return;
+		}
+		// move the beans back into remainingBeans in place, so once its capacity
+		// has grown to the whole population a repeat allocates nothing
+		if (remainingBeansCursor > 0) {
+			remainingBeans.subList(0, remainingBeansCursor).clear();
+			remainingBeansCursor = 0;
+		}
+		for (int y = flightHigh - 1; y >= flightLow; y--) {
+			int row = rowIndex(y);
+			for (int j = 0; j < rowBeans[row]; j++) {
+				remainingBeans.add(flightBeans[row * dropRate + j]);
+				flightBeans[row * dropRate + j] = null;
+			}
+			rowBeans[row] = 0;
+		}
+		clearFlight();
+		for (int i = slots.getLowSlot(); i < slots.getHighSlot(); i++) {
+			List<Bean> slot = slots.get(i);
+			if (slot != null) {
+				for (int j = 0; j < slot.size(); j++) {
+					remainingBeans.add(slot.get(j));
+				}
+				slot.clear();
+			}
+		}
+		clearSlotRecords();
+		for (int j = 0; j < remainingBeans.size(); j++) {
+			remainingBeans.get(j).resetPosition();
 		}
-		reset(beans.toArray(new Bean[]{}));
+		// beans still to be made by beanSource come first, as before
+		dropFromRemaining();
 	}
 
 	/**
@@ -285,32 +871,282 @@ public class BeanCounterLogic {
 	 *         means the machine is finished.
 	 */
 	public boolean advanceStep() {
-		if (remainingBeans.size() > 0 || flightBeans.size() > 0) {
-			List<Bean> removeFromFlight = new ArrayList<>();
-			for (Bean bean : flightBeans) {
-				if (bean.getYpos() >= slotCount - 1) {
-					slots.get(bean.getXpos()).add(bean);
-					removeFromFlight.add(bean);
-				} else {
-					bean.goRight();
+		return advanceSteps(1) == 1;
+	}
+
+	/**
+	 * Advances the machine up to n steps in one call, stopping early if it
+	 * finishes. The machine ends up exactly as after n calls of advanceStep(),
+	 * with the same random numbers drawn in the same order, but each step only
+	 * visits the rows between the highest and the lowest in-flight bean.
+	 * 
+	 * @param n the number of steps to take
+	 * @return the number of steps that changed the machine, less than n only if
+	 *         it finished
+	 */
+	public long advanceSteps(long n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Number of steps must not be negative, got " + n);
+		}
+		long steps = 0;
+		if (isCountsOnly()) {
+			while (steps < n && advanceStoreStep()) {
+				steps++;
+			}
+		} else {
+			while (steps < n && advanceBeanStep()) {
+				steps++;
+			}
+		}
+		return steps;
+	}
+
+	/**
+	 * Steps the machine until it finishes. Unlike runToCompletion(), this draws
+	 * the same random numbers as stepping one step at a time.
+	 * 
+	 * @return the number of steps taken
+	 */
+	public long runUntilDone() {
+		return advanceSteps(Long.MAX_VALUE);
+	}
+
+	/**
+	 * advanceStep() for machines that keep Bean objects.
+	 * 
+	 * @return whether there has been any status change
+	 */
+	private boolean advanceBeanStep() {
+		if (getRemainingBeanCount() == 0 && flightCount == 0) {
+			return false;
+		}
+		if (flightCount > 0) {
+			// land the beans in the bottom row
+			if (flightHigh == slotCount) {
+				int bottom = rowIndex(slotCount - 1);
+				for (int j = 0; j < rowBeans[bottom]; j++) {
+					landBean(flightBeans[bottom * dropRate + j]);
+					flightBeans[bottom * dropRate + j] = null;
+				}
+				flightCount -= rowBeans[bottom];
+				rowBeans[bottom] = 0;
+			}
+			// move the others from the bottom up, which is the order they were dropped in
+			for (int y = Math.min(flightHigh, slotCount - 1) - 1; y >= flightLow; y--) {
+				int row = rowIndex(y);
+				for (int j = 0; j < rowBeans[row]; j++) {
+					flightBeans[row * dropRate + j].goRight();
 				}
 			}
-			flightBeans.removeAll(removeFromFlight);
+			rotateFlight();
+		}
+
+		// if there are any beans put up to the drop rate at the top of the machine
+		dropFromRemaining();
+		return true;
+	}
 
-			// if there are any beans put one at the top of the machine
-			if (remainingBeans.size() > 0) {
-				Bean first = remainingBeans.remove(0);
-				flightBeans.add(first);
+	/**
+	 * advanceStep() for counts-only machines. Moves the beans exactly like the
+	 * Bean based path, in the same order, so the same random numbers give the
+	 * same results.
+	 * 
+	 * @return whether there has been any status change
+	 */
+	private boolean advanceStoreStep() {
+		if (remainingCursor == remainingStore.size() && flightCount == 0) {
+			return false;
+		}
+		if (flightCount > 0) {
+			// land the beans in the bottom row
+			if (flightHigh == slotCount) {
+				int bottom = rowIndex(slotCount - 1);
+				for (int j = 0; j < rowBeans[bottom]; j++) {
+					landInSlot(flightX[bottom * dropRate + j]);
+					flightRand[bottom * dropRate + j] = null;
+				}
+				flightCount -= rowBeans[bottom];
+				rowBeans[bottom] = 0;
+			}
+			// move the others from the bottom up, which is the order they were dropped in
+			for (int y = Math.min(flightHigh, slotCount - 1) - 1; y >= flightLow; y--) {
+				int row = rowIndex(y);
+				if (bulkLuck) {
+					LuckStepKernel.step(flightX, row * dropRate, row * dropRate + rowBeans[row], rand);
+					continue;
+				}
+				for (int i = row * dropRate; i < row * dropRate + rowBeans[row]; i++) {
+					boolean goesRight = isLuck ? flightRand[i].nextBoolean() : flightX[i] < flightSkill[i];
+					if (goesRight) {
+						flightX[i]++;
+					}
+				}
+			}
+			rotateFlight();
+		}
+		dropFromStore();
+		return true;
+	}
+
+	/**
+	 * Finishes the experiment without stepping. Every in-flight bean falls
+	 * through the rest of its pegs and every remaining bean through all of them,
+	 * and they land in the same order as stepping would land them. Luck beans
+	 * take a single random draw per 64 pegs instead of one per peg, and skill
+	 * beans land in closed form, which gives exactly the slots stepping would.
+	 */
+	public void runToCompletion() {
+		if (isCountsOnly()) {
+			runStoreToCompletion();
+			return;
+		}
+		for (int y = flightHigh - 1; y >= flightLow; y--) {
+			int row = rowIndex(y);
+			for (int i = row * dropRate; i < row * dropRate + rowBeans[row]; i++) {
+				flightBeans[i].fall(slotCount - 1 - y);
+				landBean(flightBeans[i]);
+				flightBeans[i] = null;
+			}
+			rowBeans[row] = 0;
+		}
+		clearFlight();
+		for (; sourceCursor < sourceCount; sourceCursor++) {
+			Bean bean = beanSource.apply(sourceCursor);
+			bean.fall(slotCount - 1);
+			landBean(bean);
+		}
+		for (; remainingBeansCursor < remainingBeans.size(); remainingBeansCursor++) {
+			Bean bean = remainingBeans.get(remainingBeansCursor);
+			bean.fall(slotCount - 1);
+			landBean(bean);
+		}
+	}
+
+	/**
+	 * runToCompletion() for counts-only machines.
+	 */
+	private void runStoreToCompletion() {
+		landStoreFlight();
+		int pegs = slotCount - 1;
+		int size = remainingStore.size();
+		SlotHistogram counts = new SlotHistogram(slotCount, false);
+		if (isLuck) {
+			for (; remainingCursor < size; remainingCursor++) {
+				counts.add(Bean.countRights(rand.forBean(beanIndexBase + remainingCursor), pegs), 1);
 			}
-			return true;
 		} else {
-			return false;
+			// a new skill bean lands in its skill clamped to the slots
+			for (; remainingCursor < size; remainingCursor++) {
+				counts.add(Bean.skillRights(0, remainingStore.getSkill(remainingCursor), pegs), 1);
+			}
 		}
+		addToSlots(counts);
+	}
+
+	/**
+	 * runToCompletion() on several threads. The in-flight beans are finished on
+	 * the calling thread, then the remaining beans are split across a
+	 * ForkJoinPool with threads workers (see ParallelBeanEngine). Each worker
+	 * gets an independent split of this machine's random number generator, so
+	 * results are statistically the same as runToCompletion(), but
+	 * luck beans do not land in the same slots. Only counts-only machines run in
+	 * parallel; other machines fall back to runToCompletion().
+	 * 
+	 * @param threads number of worker threads
+	 */
+	public void runToCompletion(int threads) {
+		if (!isCountsOnly() || threads <= 1) {
+			runToCompletion();
+			return;
+		}
+		landStoreFlight();
+		ParallelBeanEngine engine = new ParallelBeanEngine(remainingStore, remainingCursor,
+				remainingStore.size(), slotCount, rand.split(), beanIndexBase);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			addToSlots(pool.invoke(engine));
+		} finally {
+			pool.shutdown();
+		}
+		remainingCursor = remainingStore.size();
+	}
+
+	/**
+	 * Records beans added to or removed from a slot in the slot counts and
+	 * statistics.
+	 * 
+	 * @param slot  the slot number
+	 * @param beans the number of beans added, negative for removed beans
+	 */
+	private void recordSlot(int slot, long beans) {
+		slotCounts.add(slot, beans);
+		stats.add(slot, beans);
+	}
+
+	/**
+	 * Records that all slots were emptied.
+	 */
+	private void clearSlotRecords() {
+		stats.clear();
+		slotCounts.clear();
+	}
+
+	/**
+	 * Puts a bean that reached the bottom of the machine into its slot.
+	 * 
+	 * @param bean the bean to land
+	 */
+	private void landBean(Bean bean) {
+		slots.getOrCreate(bean.getXpos()).add(bean);
+		recordSlot(bean.getXpos(), 1);
+	}
+
+	/**
+	 * Counts a bean of a counts-only machine that landed in a slot.
+	 * 
+	 * @param slot the slot the bean landed in
+	 */
+	private void landInSlot(int slot) {
+		recordSlot(slot, 1);
+	}
+
+	/**
+	 * Adds a histogram of landed beans to the slots of a counts-only machine.
+	 * 
+	 * @param counts the beans that landed
+	 */
+	private void addToSlots(SlotHistogram counts) {
+		for (int i = counts.getLowSlot(); i < counts.getHighSlot(); i++) {
+			if (counts.get(i) != 0) {
+				recordSlot(i, counts.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Finishes the in-flight beans of a counts-only machine without stepping.
+	 */
+	private void landStoreFlight() {
+		for (int y = flightHigh - 1; y >= flightLow; y--) {
+			int row = rowIndex(y);
+			int pegs = slotCount - 1 - y;
+			for (int i = row * dropRate; i < row * dropRate + rowBeans[row]; i++) {
+				int x = flightX[i];
+				x += isLuck ? Bean.countRights(flightRand[i], pegs) : Bean.skillRights(x, flightSkill[i], pegs);
+				landInSlot(x);
+				flightRand[i] = null;
+			}
+			rowBeans[row] = 0;
+		}
+		clearFlight();
 	}
 
 	public static void showUsage() {
-		System.out.println("Usage: java BeanCounterLogic <number of beans> <luck | skill>");
+		System.out.println("Usage: java BeanCounterLogic <number of beans> <luck | skill>"
+				+ " [--threads <n>] [--seed <seed>] [--rng <xoroshiro | counter>] [--store <file>]");
 		System.out.println("Example: java BeanCounterLogic 400 luck");
+		System.out.println("Example: java BeanCounterLogic 2000000000 luck --threads 32 --seed 1632");
+		System.out.println("Example: java BeanCounterLogic 2000000000 skill --store /tmp/beans.bin");
 	}
 
 	/**
@@ -321,12 +1157,20 @@ public class BeanCounterLogic {
 	 * for a small number of beans and slots.
 	 * 
 	 * @param args args[0] is an integer bean count, args[1] is a string which is
-	 *             either luck or skill.
+	 *             either luck or skill, optionally followed by --threads and
+	 *             the number of threads to run the experiment on and by --seed
+	 *             and a seed to make the run reproducible and by --rng and
+	 *             counter to draw each bean's path from its index and by
+	 *             --store and a file to keep skill beans in instead of the heap.
 	 */
 	public static void main(String[] args) {
 		boolean luck;
 		int beanCount = 0;
 		int slotCount = 0;
+		int threads = 1;
+		Long seed = null;
+		boolean counter = false;
+		String storeFile = null;
 
 		if (args.length == 1 && args[0].equals("test")) {
 			beanCount = Verify.getInt(0, 3);
@@ -381,17 +1225,35 @@ public class BeanCounterLogic {
 			return;
 		}
 
-		if (args.length != 2) {
+		if (args.length < 2 || args.length % 2 != 0) {
 			showUsage();
 			return;
 		}
 
 		try {
 			beanCount = Integer.parseInt(args[0]);
+			for (int i = 2; i < args.length; i += 2) {
+				if (args[i].equals("--threads")) {
+					threads = Integer.parseInt(args[i + 1]);
+				} else if (args[i].equals("--seed")) {
+					seed = Long.parseLong(args[i + 1]);
+				} else if (args[i].equals("--rng") && args[i + 1].matches("xoroshiro|counter")) {
+					counter = args[i + 1].equals("counter");
+				} else if (args[i].equals("--store")) {
+					storeFile = args[i + 1];
+				} else {
+					showUsage();
+					return;
+				}
+			}
 		} catch (NumberFormatException ne) {
 			showUsage();
 			return;
 		}
+		if (threads < 1) {
+			showUsage();
+			return;
+		}
 		if (beanCount < 0) {
 			showUsage();
 			return;
@@ -408,27 +1270,39 @@ public class BeanCounterLogic {
 		
 		slotCount = 10;
 
-		// Create the internal logic
-		BeanCounterLogic logic = new BeanCounterLogic(slotCount);
-		// Create the beans (in luck mode)
-		Bean[] beans = new Bean[beanCount];
-		for (int i = 0; i < beanCount; i++) {
-			beans[i] = new Bean(luck, new Random());
+		BeanRandom rand;
+		if (counter) {
+			rand = new CounterBeanRandom(seed == null ? new XoroshiroBeanRandom().nextLong() : seed);
+		} else {
+			rand = seed == null ? new XoroshiroBeanRandom() : new XoroshiroBeanRandom(seed);
 		}
-		// Initialize the logic with the beans
-		logic.reset(beans);
+		// Luck beans are only a count, so only skill beans need a file
+		BeanStore store;
+		try {
+			store = storeFile == null || luck ? new BeanStore(luck) : new MappedBeanStore(Paths.get(storeFile));
+		} catch (IOException | InvalidPathException e) {
+			System.out.println("Cannot open " + storeFile + ": " + e.getMessage());
+			return;
+		}
+		// Create the internal logic, only counting landed beans to keep memory flat
+		BeanCounterLogic logic = new BeanCounterLogic(slotCount, store, rand);
+		// Initialize the logic with newly generated beans
+		logic.reset(beanCount);
 					
 		// Perform the experiment
-		while (true) {
-			if (!logic.advanceStep()) {
-				break;
-			}
-		}
+		logic.runToCompletion(threads);
 		// display experimental results
 		System.out.println("Slot bean counts:");
 		for (int i = 0; i < slotCount; i++) {
 			System.out.print(logic.getSlotBeanCount(i) + " ");
 		}
 		System.out.println("");
+		if (store instanceof MappedBeanStore) {
+			try {
+				((MappedBeanStore) store).close();
+			} catch (IOException e) {
+				System.out.println("Cannot close " + storeFile + ": " + e.getMessage());
+			}
+		}
 	}
 }
@@ -7,12 +7,17 @@ import org.junit.Test;
 import org.mockito.Mock;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.function.IntFunction;
 
 public class BeanCounterLogicTest {
 	// Be sure to mock your beans!
@@ -64,6 +69,18 @@ public class BeanCounterLogicTest {
 		assertEquals(4, logic.getRemainingBeanCount());
 	}
 	
+	@Test
+	public void injectedRemaining() {
+		List<Bean> remainingBeans = new ArrayList<>();
+		remainingBeans.add(bean1);
+		remainingBeans.add(bean2);
+		logic = new BeanCounterLogic(10, remainingBeans, null, null);
+		assertEquals(2, logic.getRemainingBeanCount());
+		logic.advanceStep();
+		assertEquals(1, logic.getRemainingBeanCount());
+		assertEquals(1, logic.inFlightBeanCount());
+	}
+
 	// Tests for getInFlightBeanXPos
 	@Test
 	public void firstBean() {
@@ -88,6 +105,24 @@ public class BeanCounterLogicTest {
 		assertEquals(2, logic.getInFlightBeanXPos(2));
 	}
 
+	@Test
+	public void beanMovesDownRows() {
+		Bean bean = new Bean(false, rand, 9, 0, 0);
+		logic.reset(new Bean[] { bean });
+		logic.advanceStep();
+		logic.advanceStep();
+		assertEquals(BeanCounterLogic.NO_BEAN_IN_YPOS, logic.getInFlightBeanXPos(0));
+		assertEquals(2, logic.getInFlightBeanXPos(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void twoBeansInOneRow() {
+		List<Bean> flightBeans = new ArrayList<>();
+		flightBeans.add(bean1);
+		flightBeans.add(bean2);
+		logic = new BeanCounterLogic(10, null, flightBeans, null);
+	}
+
 	// Tests for inFlightBeanCount
 	@Test
 	public void oneFlight() {
@@ -107,19 +142,24 @@ public class BeanCounterLogicTest {
 	
 	@Test
 	public void oneSlot() {
-		//logic.reset(new Bean[] { bean1 };
-		logic.getSlots().get(0).add(bean1);
+		logic = new BeanCounterLogic(10, null, null, setupSlots(10));
 		assertEquals(1, logic.getSlotBeanCount(0));
 	}
 	
 	@Test
 	public void twoSlot() {
-		//logic.reset(new Bean[] { bean1 });
-		logic.getSlots().get(0).add(bean1);
-		logic.getSlots().get(0).add(bean2);
+		ArrayList<List<Bean>> slots = setupSlots(10);
+		slots.get(0).add(bean2);
+		logic = new BeanCounterLogic(10, null, null, slots);
 		
 		assertEquals(2,logic.getSlotBeanCount(0));
 	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void slotsAreReadOnly() {
+		logic = new BeanCounterLogic(10, null, null, setupSlots(10));
+		logic.getSlots().get(0).add(bean2);
+	}
 	
 	
 	// Tests for getAverageSlotBeanCount
@@ -144,6 +184,45 @@ public class BeanCounterLogicTest {
 	}
 	
 	
+	// Tests for the slot statistics
+	@Test
+	public void statisticsOfSlots() {
+		ArrayList<List<Bean>> slots = setupSlots(10);
+		logic = new BeanCounterLogic(10, null, null, slots);
+		assertEquals(10, logic.getTotalSlotBeanCount());
+		assertEquals(45.0, logic.getSlotBeanSum(), 0.001);
+		assertEquals(8.25, logic.getSlotBeanVariance(), 0.001);
+		assertEquals(Math.sqrt(8.25), logic.getSlotBeanStandardDeviation(), 0.001);
+		assertEquals(0.0, logic.getSlotBeanSkewness(), 0.001);
+		// a discrete uniform distribution over n values has excess kurtosis -6(n^2+1)/5(n^2-1)
+		assertEquals(-6.0 * 101 / (5 * 99), logic.getSlotBeanKurtosis(), 0.001);
+	}
+
+	@Test
+	public void statisticsFollowHalving() {
+		ArrayList<List<Bean>> slots = setupSlots(10);
+		logic = new BeanCounterLogic(10, null, null, slots);
+		logic.upperHalf();
+		assertEquals(5, logic.getTotalSlotBeanCount());
+		assertEquals(7.0, logic.getAverageSlotBeanCount(), 0.001);
+		assertEquals(2.0, logic.getSlotBeanVariance(), 0.001);
+		logic.repeat();
+		assertEquals(0, logic.getTotalSlotBeanCount());
+		assertEquals(0.0, logic.getAverageSlotBeanCount(), 0.001);
+	}
+
+	@Test
+	public void statisticsOfLuckRun() {
+		logic = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(3));
+		logic.reset(200000);
+		logic.runToCompletion();
+		// a binomial(9, 0.5) distribution
+		assertEquals(4.5, logic.getAverageSlotBeanCount(), 0.02);
+		assertEquals(2.25, logic.getSlotBeanVariance(), 0.03);
+		assertEquals(0.0, logic.getSlotBeanSkewness(), 0.02);
+		assertEquals(-2.0 / 9, logic.getSlotBeanKurtosis(), 0.03);
+	}
+
 	// Tests for upperHalf
 	@Test
 	public void noBeansUpper() {
@@ -167,9 +246,10 @@ public class BeanCounterLogicTest {
 		ArrayList<List<Bean>> slots = setupSlots(slotCount);
 		logic = new BeanCounterLogic(slotCount, null, null, slots);
 		logic.upperHalf();
-		// assert that each slot is empty
+		// assert that each slot is empty; the machine took the lists over
 		for (int i = 0; i < slotCount / 2; i++) {
-			assertEquals(0, slots.get(i).size());
+			assertEquals(0, logic.getSlotBeanCount(i));
+			assertTrue(logic.getSlots().get(i).isEmpty());
 		}
 	}
 
@@ -237,13 +317,100 @@ public class BeanCounterLogicTest {
 		ArrayList<List<Bean>> slots = setupSlots(slotCount);
 		logic = new BeanCounterLogic(slotCount, null, null, slots);
 		logic.lowerHalf();
-		// assert that each slot is empty
+		// assert that each slot is empty; the machine took the lists over
 		for (int i = slotCount / 2; i < slotCount; i++) {
-			assertEquals(0, slots.get(i).size());
+			assertEquals(0, logic.getSlotBeanCount(i));
+			assertTrue(logic.getSlots().get(i).isEmpty());
 		}
 	}
 
 
+	// Tests for the slot index
+
+	@Test
+	public void prefixCountsAndMedian() {
+		ArrayList<List<Bean>> slots = setupSlots(10);
+		slots.get(7).add(bean2);
+		slots.get(7).add(bean2);
+		logic = new BeanCounterLogic(10, null, null, slots);
+		assertEquals(3, logic.getSlotBeanCountUpTo(2));
+		assertEquals(12, logic.getSlotBeanCountUpTo(9));
+		assertEquals(6, logic.getMedianSlot());
+		assertEquals(0, logic.getPercentileSlot(0.0));
+		assertEquals(9, logic.getPercentileSlot(1.0));
+	}
+
+	@Test
+	public void noMedianWithoutBeans() {
+		assertEquals(-1, logic.getMedianSlot());
+	}
+
+	// Tests for keepRange
+
+	@Test
+	public void keepsMiddleHalf() {
+		int slotCount = 10;
+		ArrayList<List<Bean>> slots = new ArrayList<>();
+		for (int i = 0; i < slotCount; i++) {
+			slots.add(new ArrayList<>());
+		}
+		// 4 beans in slot 2, 4 beans in slot 6
+		for (int i = 0; i < 4; i++) {
+			slots.get(2).add(bean1);
+			slots.get(6).add(bean2);
+		}
+		logic = new BeanCounterLogic(slotCount, null, null, slots);
+		logic.keepRange(0.25, 0.75);
+		assertEquals(2, slots.get(2).size());
+		assertEquals(2, slots.get(6).size());
+		assertEquals(4.0, logic.getAverageSlotBeanCount(), 0.001);
+	}
+
+	@Test
+	public void keepRangeCountsOnly() {
+		logic = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(4));
+		logic.reset(100001);
+		logic.runToCompletion();
+		logic.keepRange(0.1, 0.6);
+		assertEquals(100001 - 10000 - 40000, logic.getTotalSlotBeanCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void keepRangeRejectsReversed() {
+		logic.keepRange(0.75, 0.25);
+	}
+
+	@Test
+	public void wideBoardCountsOnly() {
+		logic = new BeanCounterLogic(1000000, false, new XoroshiroBeanRandom(5));
+		logic.reset(1000);
+		logic.runToCompletion();
+		assertEquals(1000, logic.getTotalSlotBeanCount());
+		assertTrue(logic.getMedianSlot() < 100);
+		assertEquals(0, logic.getSlotBeanCount(999999));
+		logic.repeat();
+		logic.runToCompletion();
+		logic.keepRange(0.25, 0.75);
+		assertEquals(500, logic.getTotalSlotBeanCount());
+	}
+
+	@Test
+	public void wideBoardSlotsGrowBothWays() {
+		Random rand = new Random(6);
+		Bean high = new Bean(false, rand, 999990, 0, 0);
+		Bean low = new Bean(false, rand, 3, 0, 0);
+		logic = new BeanCounterLogic(1000000);
+		logic.reset(new Bean[] {high, low});
+		logic.runToCompletion();
+		assertEquals(1, logic.getSlotBeanCount(3));
+		assertEquals(1, logic.getSlotBeanCount(999990));
+		assertEquals(1, logic.getSlotBeanCountUpTo(999989));
+		assertEquals(999990, logic.getPercentileSlot(1.0));
+		logic.upperHalf();
+		assertEquals(0, logic.getSlotBeanCount(3));
+		assertEquals(1, logic.getSlotBeanCount(999990));
+	}
+
 	private ArrayList<List<Bean>> setupSlots(int slotCount) {
 		ArrayList<List<Bean>> slots = new ArrayList<>();
 		for (int i = 0; i < slotCount; i++) {
@@ -256,6 +423,137 @@ public class BeanCounterLogicTest {
 	// Tests for reset
 	
 	
+	@Test
+	public void lazyBeansMadeWhenDropped() {
+		int[] made = new int[1];
+		logic.reset(5, i -> {
+			made[0]++;
+			return new Bean(false, rand, i, 0, 0);
+		});
+		assertEquals(1, made[0]);
+		assertEquals(4, logic.getRemainingBeanCount());
+		logic.advanceStep();
+		assertEquals(2, made[0]);
+		assertEquals(3, logic.getRemainingBeanCount());
+		logic.runToCompletion();
+		assertEquals(5, made[0]);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(1, logic.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void resetWithNewSeedDropsNewBeans() {
+		Random seeds = new Random(12);
+		int[][] counts = new int[3][10];
+		for (int run = 0; run < 3; run++) {
+			long seed = run == 2 ? 7 : seeds.nextLong();
+			logic.reset(300, logic.getBeanPool().source(true, seed));
+			logic.runUntilDone();
+			for (int i = 0; i < 10; i++) {
+				counts[run][i] = logic.getSlotBeanCount(i);
+			}
+		}
+		assertFalse(Arrays.equals(counts[0], counts[1]));
+		// the same seed makes the same beans
+		logic.reset(300, logic.getBeanPool().source(true, 7));
+		logic.runUntilDone();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(counts[2][i], logic.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void skillsSurviveReset() {
+		long[][] skills = new long[2][];
+		for (int run = 0; run < 2; run++) {
+			logic.reset(50, logic.getBeanPool().source(false, 5));
+			logic.runUntilDone();
+			List<Long> landed = new ArrayList<>();
+			for (List<Bean> slot : logic.getSlots()) {
+				for (Bean bean : slot) {
+					landed.add(bean.skill);
+				}
+			}
+			skills[run] = landed.stream().mapToLong(Long::longValue).sorted().toArray();
+		}
+		assertEquals(50, skills[0].length);
+		assertArrayEquals(skills[0], skills[1]);
+	}
+
+	@Test
+	public void repeatKeepsLazyBeansFirst() {
+		int[] made = new int[1];
+		logic.reset(5, i -> {
+			made[0]++;
+			return new Bean(false, rand, i, 0, 0);
+		});
+		logic.advanceSteps(2);
+		logic.repeat();
+		// the fourth bean is made and dropped before the three scooped ones
+		assertEquals(4, made[0]);
+		assertEquals(4, logic.getRemainingBeanCount());
+		assertEquals(1, logic.inFlightBeanCount());
+		logic.runToCompletion();
+		assertEquals(5, made[0]);
+		assertEquals(5, logic.getTotalSlotBeanCount());
+	}
+
+	@Test
+	public void halvedBeansGoToPool() {
+		logic = new BeanCounterLogic(10, null, null, setupSlots(10));
+		logic.upperHalf();
+		assertEquals(5, logic.getBeanPool().size());
+	}
+
+	@Test
+	public void resetReusesPooledBeans() {
+		List<Bean> made = new ArrayList<>();
+		IntFunction<Bean> source = i -> {
+			Bean bean = logic.getBeanPool().acquire(false, new JdkBeanRandom(new Random(i)));
+			made.add(bean);
+			return bean;
+		};
+		logic.reset(3, source);
+		logic.runToCompletion();
+		List<Bean> firstRun = new ArrayList<>(made);
+		made.clear();
+		logic.reset(3, source);
+		logic.runToCompletion();
+		// the beans of the first run were released and made again
+		for (Bean bean : made) {
+			assertTrue(firstRun.contains(bean));
+		}
+		assertEquals(3, logic.getTotalSlotBeanCount());
+	}
+
+	@Test
+	public void repeatInPlaceKeepsOrder() {
+		Bean[] beans = new Bean[6];
+		for (int i = 0; i < 6; i++) {
+			beans[i] = new Bean(false, rand, i, 0, 0);
+		}
+		logic.reset(beans);
+		logic.advanceSteps(12);
+		logic.repeat();
+		logic.repeat();
+		logic.runToCompletion();
+		for (int i = 0; i < 6; i++) {
+			assertEquals(1, logic.getSlotBeanCount(i));
+			assertSame(beans[i], logic.getSlots().get(i).get(0));
+		}
+	}
+
+	@Test
+	public void lazyBeansCountsOnly() {
+		logic = new BeanCounterLogic(10, false, new XoroshiroBeanRandom(16));
+		logic.reset(3, i -> new Bean(false, rand, 2 * i, 0, 0));
+		logic.runToCompletion();
+		assertEquals(1, logic.getSlotBeanCount(0));
+		assertEquals(1, logic.getSlotBeanCount(2));
+		assertEquals(1, logic.getSlotBeanCount(4));
+	}
+
 	// Tests for repeat
 	@Test
 	public void repeatBeanAtTop() {
@@ -263,7 +561,7 @@ public class BeanCounterLogicTest {
 		flightBeans.add(bean1);
 		logic = new BeanCounterLogic(10, null, flightBeans, null);
 		logic.repeat();
-		assertEquals(1, flightBeans.size());
+		assertEquals(1, logic.inFlightBeanCount());
 	}
 
 	@Test
@@ -272,9 +570,10 @@ public class BeanCounterLogicTest {
 		ArrayList<Bean> flightBeans = new ArrayList<>();
 		flightBeans.add(bean1);
 		flightBeans.add(bean2);
+		when(bean2.getYpos()).thenReturn(1);
 		logic = new BeanCounterLogic(10, remainingBeans, flightBeans, null);
 		logic.repeat();
-		assertEquals(1, remainingBeans.size());
+		assertEquals(1, logic.getRemainingBeanCount());
 	}
 
 	@Test
@@ -284,7 +583,7 @@ public class BeanCounterLogicTest {
 		remainingBeans.add(bean2);
 		logic = new BeanCounterLogic(10, remainingBeans, null, null);
 		logic.repeat();
-		assertEquals(1, remainingBeans.size());
+		assertEquals(1, logic.getRemainingBeanCount());
 	}
 
 	@Test
@@ -314,6 +613,397 @@ public class BeanCounterLogicTest {
 		assertFalse(logic.advanceStep());
 	}
 	
+	// Tests for counts-only mode
+	@Test
+	public void countsOnlyLands() {
+		logic = new BeanCounterLogic(4, false, rand);
+		logic.reset(new Bean[] { new Bean(false, rand, 2, 0, 0), new Bean(false, rand, 9, 0, 0) });
+		while (logic.advanceStep()) {
+			// run the machine to the end
+		}
+		assertTrue(logic.isCountsOnly());
+		assertNull(logic.getSlots());
+		assertEquals(1, logic.getSlotBeanCount(2));
+		assertEquals(1, logic.getSlotBeanCount(3));
+		assertEquals(2.5, logic.getAverageSlotBeanCount(), 0.001);
+	}
+
+	@Test
+	public void countsOnlyUpperHalf() {
+		logic = new BeanCounterLogic(4, false, rand);
+		logic.reset(new Bean[] { new Bean(false, rand, 0, 0, 0), new Bean(false, rand, 1, 0, 0),
+			new Bean(false, rand, 3, 0, 0) });
+		while (logic.advanceStep()) {
+			// run the machine to the end
+		}
+		logic.upperHalf();
+		assertEquals(0, logic.getSlotBeanCount(0));
+		assertEquals(1, logic.getSlotBeanCount(1));
+		assertEquals(1, logic.getSlotBeanCount(3));
+	}
+
+	@Test
+	public void countsOnlyRepeatKeepsSkill() {
+		logic = new BeanCounterLogic(4, false, rand);
+		logic.reset(new Bean[] { new Bean(false, rand, 1, 0, 0), new Bean(false, rand, 7, 0, 0) });
+		while (logic.advanceStep()) {
+			// run the machine to the end
+		}
+		logic.repeat();
+		assertEquals(0, logic.getSlotBeanCount(1));
+		assertEquals(1, logic.getRemainingBeanCount());
+		while (logic.advanceStep()) {
+			// run the machine to the end again
+		}
+		assertEquals(1, logic.getSlotBeanCount(1));
+		assertEquals(1, logic.getSlotBeanCount(3));
+	}
+
+	@Test
+	public void countsOnlyMatchesObjectsLuck() {
+		assertSameSlots(true);
+	}
+
+	@Test
+	public void countsOnlyMatchesObjectsSkill() {
+		assertSameSlots(false);
+	}
+
+	/**
+	 * Runs the same seeded beans through a Bean based machine and a counts-only
+	 * machine and checks that they end up in the same slots.
+	 */
+	private void assertSameSlots(boolean isLuck) {
+		Random objectRand = new Random(42);
+		Random storeRand = new Random(42);
+		Bean[] objectBeans = new Bean[200];
+		Bean[] storeBeans = new Bean[200];
+		for (int i = 0; i < 200; i++) {
+			objectBeans[i] = new Bean(isLuck, objectRand);
+			storeBeans[i] = new Bean(isLuck, storeRand);
+		}
+		BeanCounterLogic objectLogic = new BeanCounterLogic(10);
+		BeanCounterLogic storeLogic = new BeanCounterLogic(10, isLuck, storeRand);
+		objectLogic.reset(objectBeans);
+		storeLogic.reset(storeBeans);
+		while (objectLogic.advanceStep()) {
+			assertTrue(storeLogic.advanceStep());
+			assertEquals(objectLogic.getInFlightBeanXPos(5), storeLogic.getInFlightBeanXPos(5));
+		}
+		assertFalse(storeLogic.advanceStep());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(objectLogic.getSlotBeanCount(i), storeLogic.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void countsOnlyGeneratesBeans() {
+		logic = new BeanCounterLogic(10, true, new Random(1));
+		logic.reset(50);
+		assertEquals(49, logic.getRemainingBeanCount());
+		assertEquals(1, logic.inFlightBeanCount());
+	}
+
+	// Tests for runToCompletion
+	@Test
+	public void runToCompletionLandsAll() {
+		Bean skillBean = new Bean(false, rand, 4, 0, 0);
+		logic.reset(new Bean[] { new Bean(true, new Random(3)), skillBean, new Bean(true, new Random(4)) });
+		logic.advanceStep();
+		logic.runToCompletion();
+		assertEquals(0, logic.getRemainingBeanCount());
+		assertEquals(0, logic.inFlightBeanCount());
+		assertTrue(logic.getSlots().get(4).contains(skillBean));
+		assertFalse(logic.advanceStep());
+	}
+
+	@Test
+	public void runToCompletionAfterHalvingMatchesStepping() {
+		BeanRandom beanRand = new CounterBeanRandom(9);
+		BeanCounterLogic stepped = new BeanCounterLogic(10);
+		BeanCounterLogic finished = new BeanCounterLogic(10);
+		for (BeanCounterLogic l : new BeanCounterLogic[] { stepped, finished }) {
+			l.setDropRate(3);
+			l.reset(200, i -> new Bean(true, beanRand.forBean(i)));
+			l.runUntilDone();
+			l.upperHalf();
+			l.repeat();
+			l.advanceSteps(4);
+		}
+		stepped.runUntilDone();
+		finished.runToCompletion();
+		assertEquals(0, finished.inFlightBeanCount());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(stepped.getSlotBeanCount(i), finished.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void runToCompletionCountsOnly() {
+		logic = new BeanCounterLogic(10, true, new Random(5));
+		logic.reset(10000);
+		logic.advanceStep();
+		logic.advanceStep();
+		logic.runToCompletion();
+		assertEquals(0, logic.getRemainingBeanCount());
+		assertEquals(0, logic.inFlightBeanCount());
+		int total = 0;
+		for (int i = 0; i < 10; i++) {
+			total += logic.getSlotBeanCount(i);
+		}
+		assertEquals(10000, total);
+		assertEquals(4.5, logic.getAverageSlotBeanCount(), 0.1);
+	}
+
+	@Test
+	public void skillCompletionMatchesStepping() {
+		long[] skills = { -2, 0, 3, 9, 12, 5, 7, 1 };
+		BeanCounterLogic stepped = new BeanCounterLogic(6, false, rand);
+		BeanCounterLogic completed = new BeanCounterLogic(6, false, rand);
+		Bean[] beans = new Bean[skills.length];
+		for (int i = 0; i < skills.length; i++) {
+			beans[i] = new Bean(false, rand, 0, 0, 0);
+			beans[i].skill = skills[i];
+		}
+		stepped.reset(beans);
+		completed.reset(beans);
+		for (int i = 0; i < 4; i++) {
+			stepped.advanceStep();
+			completed.advanceStep();
+		}
+		while (stepped.advanceStep()) {
+			// run the machine to the end
+		}
+		completed.runToCompletion();
+		for (int i = 0; i < 6; i++) {
+			assertEquals(stepped.getSlotBeanCount(i), completed.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void parallelLuckLandsAll() {
+		logic = new BeanCounterLogic(10, true, new Random(6));
+		logic.reset(500000);
+		logic.runToCompletion(4);
+		long total = 0;
+		for (int i = 0; i < 10; i++) {
+			total += logic.getSlotBeanCount(i);
+		}
+		assertEquals(500000, total);
+		assertEquals(0, logic.getRemainingBeanCount());
+		assertEquals(4.5, logic.getAverageSlotBeanCount(), 0.01);
+	}
+
+	@Test
+	public void parallelSkillMatchesSequential() {
+		BeanCounterLogic sequential = new BeanCounterLogic(10, false, new Random(7));
+		BeanCounterLogic parallel = new BeanCounterLogic(10, false, new Random(7));
+		sequential.reset(300000);
+		parallel.reset(300000);
+		sequential.runToCompletion();
+		parallel.runToCompletion(4);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(sequential.getSlotBeanCount(i), parallel.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void seededRunsMatch() {
+		BeanCounterLogic first = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(1632));
+		BeanCounterLogic second = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(1632));
+		first.reset(1000);
+		second.reset(1000);
+		first.runToCompletion();
+		second.runToCompletion();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(first.getSlotBeanCount(i), second.getSlotBeanCount(i));
+		}
+		assertEquals(4.5, first.getAverageSlotBeanCount(), 0.25);
+	}
+
+	@Test
+	public void advanceStepsMatchesSingleSteps() {
+		BeanCounterLogic stepped = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(14));
+		BeanCounterLogic batched = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(14));
+		stepped.reset(30);
+		batched.reset(30);
+		for (int steps : new int[] {1, 6, 13, 11}) {
+			for (int i = 0; i < steps; i++) {
+				stepped.advanceStep();
+			}
+			assertEquals(steps, batched.advanceSteps(steps));
+			assertEquals(stepped.inFlightBeanCount(), batched.inFlightBeanCount());
+			for (int y = 0; y < 10; y++) {
+				assertEquals(stepped.getInFlightBeanXPos(y), batched.getInFlightBeanXPos(y));
+				assertEquals(stepped.getSlotBeanCount(y), batched.getSlotBeanCount(y));
+			}
+		}
+	}
+
+	@Test
+	public void advanceStepsMatchesSingleStepsBeans() {
+		Bean[] steppedBeans = new Bean[20];
+		Bean[] batchedBeans = new Bean[20];
+		for (int i = 0; i < 20; i++) {
+			steppedBeans[i] = new Bean(true, new Random(i));
+			batchedBeans[i] = new Bean(true, new Random(i));
+		}
+		BeanCounterLogic stepped = new BeanCounterLogic(10);
+		stepped.reset(steppedBeans);
+		logic.reset(batchedBeans);
+		for (int i = 0; i < 17; i++) {
+			stepped.advanceStep();
+		}
+		logic.advanceSteps(17);
+		for (int y = 0; y < 10; y++) {
+			assertEquals(stepped.getInFlightBeanXPos(y), logic.getInFlightBeanXPos(y));
+			assertEquals(stepped.getSlotBeanCount(y), logic.getSlotBeanCount(y));
+		}
+	}
+
+	@Test
+	public void runUntilDoneCountsSteps() {
+		logic = new BeanCounterLogic(10, false, new XoroshiroBeanRandom(15));
+		logic.reset(30);
+		// the last bean is dropped after 29 steps and lands 10 steps later
+		assertEquals(39, logic.runUntilDone());
+		assertEquals(30, logic.getTotalSlotBeanCount());
+		assertEquals(0, logic.advanceSteps(5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void advanceStepsRejectsNegative() {
+		logic.advanceSteps(-1);
+	}
+
+	@Test
+	public void hugeSkillCountsOnlyMatchesObjects() {
+		logic.reset(new Bean[] { new Bean(false, rand, 1L << 32, 0, 0) });
+		logic.runToCompletion();
+		assertEquals(1, logic.getSlotBeanCount(9));
+		BeanCounterLogic storeLogic = new BeanCounterLogic(10, false, new Random(1));
+		storeLogic.reset(new Bean[] { new Bean(false, rand, 1L << 32, 0, 0) });
+		storeLogic.runToCompletion();
+		assertEquals(1, storeLogic.getSlotBeanCount(9));
+	}
+
+	@Test
+	public void dropRateFillsRows() {
+		Bean[] beans = new Bean[7];
+		for (int i = 0; i < 7; i++) {
+			beans[i] = new Bean(false, rand, i, 0, 0);
+		}
+		logic.setDropRate(3);
+		logic.reset(beans);
+		assertEquals(3, logic.getInFlightBeanCount(0));
+		assertEquals(4, logic.getRemainingBeanCount());
+		logic.advanceStep();
+		assertEquals(3, logic.getInFlightBeanCount(0));
+		assertEquals(3, logic.getInFlightBeanCount(1));
+		assertEquals(1, logic.getInFlightBeanXPos(1, 1));
+		assertEquals(BeanCounterLogic.NO_BEAN_IN_YPOS, logic.getInFlightBeanXPos(1, 3));
+		// the last bean is dropped by the second step and lands ten steps later
+		assertEquals(11, logic.runUntilDone());
+		for (int i = 0; i < 7; i++) {
+			assertEquals(1, logic.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void dropRateCountsOnlyMatchesObjects() {
+		Random seeded = new Random(18);
+		Bean[] beans = new Bean[40];
+		for (int i = 0; i < 40; i++) {
+			beans[i] = new Bean(false, seeded);
+		}
+		BeanCounterLogic counts = new BeanCounterLogic(10, false, new XoroshiroBeanRandom(18));
+		counts.setDropRate(4);
+		logic.setDropRate(4);
+		counts.reset(beans);
+		logic.reset(beans);
+		counts.advanceSteps(6);
+		logic.advanceSteps(6);
+		for (int y = 0; y < 10; y++) {
+			assertEquals(logic.getInFlightBeanCount(y), counts.getInFlightBeanCount(y));
+			for (int i = 0; i < 4; i++) {
+				assertEquals(logic.getInFlightBeanXPos(y, i), counts.getInFlightBeanXPos(y, i));
+			}
+			assertEquals(logic.getSlotBeanCount(y), counts.getSlotBeanCount(y));
+		}
+	}
+
+	@Test
+	public void dropRateCounterRunsMatch() {
+		BeanCounterLogic stepped = new BeanCounterLogic(20, true, new CounterBeanRandom(19));
+		BeanCounterLogic completed = new BeanCounterLogic(20, true, new CounterBeanRandom(19));
+		stepped.setDropRate(5);
+		completed.setDropRate(5);
+		stepped.reset(10000);
+		completed.reset(10000);
+		completed.advanceSteps(30);
+		// changing the rate in flight keeps the beans where they are
+		completed.setDropRate(8);
+		completed.advanceSteps(7);
+		stepped.runUntilDone();
+		completed.runToCompletion();
+		for (int i = 0; i < 20; i++) {
+			assertEquals(stepped.getSlotBeanCount(i), completed.getSlotBeanCount(i));
+		}
+	}
+
+	@Test
+	public void bulkLuckLandsAll() {
+		logic = new BeanCounterLogic(10, true, new XoroshiroBeanRandom(21));
+		logic.setDropRate(1000);
+		logic.setBulkLuck(true);
+		logic.reset(200000);
+		assertEquals(209, logic.runUntilDone());
+		assertEquals(200000, logic.getTotalSlotBeanCount());
+		assertEquals(4.5, logic.getAverageSlotBeanCount(), 0.02);
+		assertEquals(2.25, logic.getSlotBeanVariance(), 0.03);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void bulkLuckNeedsCountsOnly() {
+		logic.setBulkLuck(true);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void dropRateRejectsZero() {
+		logic.setDropRate(0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void dropRateRejectsFullRows() {
+		logic.setDropRate(2);
+		logic.reset(new Bean[] {bean1, bean2});
+		logic.setDropRate(1);
+	}
+
+	@Test
+	public void counterRunsMatch() {
+		BeanCounterLogic stepped = new BeanCounterLogic(70, true, new CounterBeanRandom(9));
+		BeanCounterLogic completed = new BeanCounterLogic(70, true, new CounterBeanRandom(9));
+		BeanCounterLogic parallel = new BeanCounterLogic(70, true, new CounterBeanRandom(9));
+		stepped.reset(200000);
+		completed.reset(200000);
+		parallel.reset(200000);
+		for (int i = 0; i < 30; i++) {
+			stepped.advanceStep();
+			completed.advanceStep();
+			parallel.advanceStep();
+		}
+		while (stepped.advanceStep()) {
+			// run the machine to the end
+		}
+		completed.runToCompletion();
+		parallel.runToCompletion(4);
+		for (int i = 0; i < 70; i++) {
+			assertEquals(stepped.getSlotBeanCount(i), completed.getSlotBeanCount(i));
+			assertEquals(stepped.getSlotBeanCount(i), parallel.getSlotBeanCount(i));
+		}
+	}
+
 	// Tests for showUsage
 	@Test
 	public void testShown() throws UnsupportedEncodingException {
@@ -353,6 +1043,45 @@ public class BeanCounterLogicTest {
 				.contains("Usage: java BeanCounterLogic <number of beans> <luck | skill>"));
 	}
 	
+	@Test
+	public void threadsArgs() throws UnsupportedEncodingException {
+		String[] args = new String[] { "500", "luck", "--threads", "2" };
+		
+		BeanCounterLogic.main(args);
+		assertTrue(out.toString(Charset.defaultCharset().toString())
+				.contains("Slot bean counts:"));
+	}
+	
+	@Test
+	public void seedArgs() throws UnsupportedEncodingException {
+		String[] args = new String[] { "500", "skill", "--seed", "1632" };
+		
+		BeanCounterLogic.main(args);
+		assertTrue(out.toString(Charset.defaultCharset().toString())
+				.contains("Slot bean counts:"));
+	}
+	
+	@Test
+	public void storeArgs() throws IOException {
+		Path file = Files.createTempFile("beans", ".bin");
+		try {
+			BeanCounterLogic.main(new String[] { "500", "skill", "--store", file.toString() });
+			assertTrue(out.toString(Charset.defaultCharset().toString())
+					.contains("Slot bean counts:"));
+		} finally {
+			MappedBeanStore.delete(file);
+		}
+	}
+
+	@Test
+	public void counterArgs() throws UnsupportedEncodingException {
+		String[] args = new String[] { "500", "luck", "--rng", "counter", "--seed", "7" };
+		
+		BeanCounterLogic.main(args);
+		assertTrue(out.toString(Charset.defaultCharset().toString())
+				.contains("Slot bean counts:"));
+	}
+	
 	@Test
 	public void tooManyArgs() throws UnsupportedEncodingException {
 		String[] args = new String[] { "500", "luck", "yas" };
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * BeanPool: A free list of Bean objects that are no longer in a machine. A bean
+ * source that acquires its beans from a pool gets released beans back, set up
+ * as new ones by Bean.reinit, instead of allocating fresh ones, so a machine
+ * that is reset, halved and repeated many times stops allocating beans once the
+ * pool has warmed up. Whole lists of beans can be released at once without
+ * touching the beans; they are taken out of the list as they are acquired.
+ */
+
+public class BeanPool {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Bean[] free = new Bean[INITIAL_CAPACITY];
+	private int size;
+	private List<List<Bean>> lists = new ArrayList<>();	// released with releaseAll
+	private int listBeans;				// number of beans in lists
+
+	/**
+	 * Returns a bean in either luck mode or skill mode, reusing a released bean
+	 * if there is one.
+	 * 
+	 * @param isLuck whether the bean is in luck mode
+	 * @param rand   the random number generator
+	 * @return the bean
+	 */
+	public Bean acquire(boolean isLuck, BeanRandom rand) {
+		Bean bean = take();
+		if (bean == null) {
+			return new Bean(isLuck, rand);
+		}
+		bean.reinit(isLuck, rand);
+		return bean;
+	}
+
+	/**
+	 * Takes a released bean out of the pool.
+	 * 
+	 * @return the bean, or null if the pool is empty
+	 */
+	private Bean take() {
+		if (size > 0) {
+			Bean bean = free[--size];
+			free[size] = null;
+			return bean;
+		}
+		while (!lists.isEmpty()) {
+			List<Bean> list = lists.get(lists.size() - 1);
+			if (list.isEmpty()) {
+				lists.remove(lists.size() - 1);
+			} else {
+				listBeans--;
+				return list.remove(list.size() - 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gives a bean that is no longer used back to the pool.
+	 * 
+	 * @param bean the bean
+	 */
+	public void release(Bean bean) {
+		if (size == free.length) {
+			free = Arrays.copyOf(free, size * 2);
+		}
+		free[size++] = bean;
+	}
+
+	/**
+	 * Gives a list of beans that are no longer used back to the pool, in
+	 * constant time. The pool takes the list over.
+	 * 
+	 * @param beans the beans
+	 */
+	public void releaseAll(List<Bean> beans) {
+		lists.add(beans);
+		listBeans += beans.size();
+	}
+
+	/**
+	 * Returns a bean source that acquires its beans from this pool. Bean i draws
+	 * from stream i of a CounterBeanRandom with the given seed, so a seed always
+	 * makes the same beans and a new seed makes new ones.
+	 * 
+	 * @param isLuck whether the beans are in luck mode
+	 * @param seed   the seed of the beans
+	 * @return the bean source, for BeanCounterLogic.reset(int, IntFunction)
+	 */
+	public IntFunction<Bean> source(boolean isLuck, long seed) {
+		BeanRandom rand = new CounterBeanRandom(seed);
+		return i -> acquire(isLuck, rand.forBean(i));
+	}
+
+	/**
+	 * @return the number of beans waiting to be reused
+	 */
+	public int size() {
+		return size + listBeans;
+	}
+}
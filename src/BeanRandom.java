@@ -0,0 +1,52 @@
+/**
+ * BeanRandom: The random number generator used by beans and by the engines in
+ * BeanCounterLogic. Unlike java.util.Random, implementations do not have to be
+ * thread-safe, so they can skip the synchronization Random pays on every call.
+ * Use split() to give another thread its own generator.
+ */
+
+public interface BeanRandom {
+
+	/**
+	 * @return the next random boolean
+	 */
+	boolean nextBoolean();
+
+	/**
+	 * @return the next random long, all 64 bits of which are random
+	 */
+	long nextLong();
+
+	/**
+	 * Returns the next normally distributed double with mean 0.0 and standard
+	 * deviation 1.0. The default implementation uses the Box-Muller transform.
+	 * 
+	 * @return the next random Gaussian
+	 */
+	default double nextGaussian() {
+		// 53 random bits in (0, 1] for the log, so that it is never log(0)
+		double u1 = ((nextLong() >>> 11) + 1) * 0x1.0p-53;
+		double u2 = (nextLong() >>> 11) * 0x1.0p-53;
+		return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+	}
+
+	/**
+	 * Returns the generator for the bean with the given index. Ordinary
+	 * generators are shared by all beans and return themselves; counter-based
+	 * ones (see CounterBeanRandom) return the bean's own stream.
+	 * 
+	 * @param beanIndex the index of the bean
+	 * @return the generator for the bean
+	 */
+	default BeanRandom forBean(long beanIndex) {
+		return this;
+	}
+
+	/**
+	 * Creates a new generator whose numbers are independent of this one's, for
+	 * use on another thread.
+	 * 
+	 * @return the new generator
+	 */
+	BeanRandom split();
+}
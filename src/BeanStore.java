@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * BeanStore: A compact population of beans for counts-only machines. Instead of
+ * one Bean object (with its own Random) per bean, the store keeps a single int
+ * skill per bean in a primitive array. All beans in a store share the same mode,
+ * and luck beans need no per-bean state at all, so a luck store is only a count.
+ * Subclasses may keep the skills elsewhere, see MappedBeanStore.
+ */
+
+public class BeanStore {
+
+	private static final int INITIAL_CAPACITY = 16;
+	static final int MAX_SIZE = Integer.MAX_VALUE - 8;	// the largest array most VMs allow
+
+	private boolean isLuck;
+	private int[] skills;	// null in luck mode
+	protected int size;
+
+	/**
+	 * Constructor - creates an empty store.
+	 *
+	 * @param isLuck whether the beans in the store are in luck mode
+	 */
+	BeanStore(boolean isLuck) {
+		this.isLuck = isLuck;
+		if (!isLuck) {
+			this.skills = new int[INITIAL_CAPACITY];
+		}
+	}
+
+	/**
+	 * @return whether the beans in the store are in luck mode
+	 */
+	public boolean isLuck() {
+		return isLuck;
+	}
+
+	/**
+	 * @return the number of beans in the store
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the skill of the ith bean. Luck beans have no skill and return 0.
+	 *
+	 * @param i index of the bean
+	 * @return skill of the bean
+	 */
+	public int getSkill(int i) {
+		return isLuck ? 0 : skills[i];
+	}
+
+	/**
+	 * Appends a bean to the store.
+	 *
+	 * @param skill the skill of the bean, ignored in luck mode
+	 */
+	public void add(long skill) {
+		checkRoom(1);
+		if (!isLuck) {
+			if (size == skills.length) {
+				skills = Arrays.copyOf(skills, (int) Math.min(2L * size, MAX_SIZE));
+			}
+			skills[size] = storedSkill(skill);
+		}
+		size++;
+	}
+
+	/**
+	 * Appends count luck beans to a luck store. Luck beans need no per-bean
+	 * state, so this is constant-time.
+	 *
+	 * @param count number of beans to add
+	 */
+	public void addLuck(int count) {
+		if (!isLuck) {
+			throw new IllegalStateException("Skill beans need a skill each");
+		}
+		checkRoom(count);
+		size += count;
+	}
+
+	/**
+	 * Throws if the store cannot take count more beans.
+	 *
+	 * @param count number of beans to add
+	 */
+	protected void checkRoom(int count) {
+		if (count > MAX_SIZE - size) {
+			throw new IllegalStateException("A BeanStore holds at most " + MAX_SIZE + " beans");
+		}
+	}
+
+	/**
+	 * Converts the skill of a bean to the int kept in a store. A bean goes right
+	 * on every peg once its skill reaches the number of pegs, and never below 0,
+	 * so clamping the skill to an int does not change where the bean lands.
+	 *
+	 * @param skill the skill of the bean
+	 * @return the skill to store
+	 */
+	protected static int storedSkill(long skill) {
+		return (int) Math.min(Math.max(skill, 0), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Removes the first count beans, shifting the rest to the front.
+	 *
+	 * @param count number of beans to remove
+	 */
+	public void removeFirst(int count) {
+		if (!isLuck) {
+			System.arraycopy(skills, count, skills, 0, size - count);
+		}
+		size -= count;
+	}
+
+	/**
+	 * Removes all beans from the store.
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,45 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BeanStoreTest {
+
+	@Test
+	public void removeFirstShiftsSkills() {
+		BeanStore store = new BeanStore(false);
+		for (int i = 0; i < 40; i++) {
+			store.add(i);
+		}
+		store.removeFirst(15);
+		assertEquals(25, store.size());
+		assertEquals(15, store.getSkill(0));
+		assertEquals(39, store.getSkill(24));
+	}
+
+	@Test
+	public void clampsHugeSkills() {
+		BeanStore store = new BeanStore(false);
+		store.add(1L << 32);
+		assertEquals(Integer.MAX_VALUE, store.getSkill(0));
+	}
+
+	@Test
+	public void luckStoreIsACount() {
+		BeanStore store = new BeanStore(true);
+		store.addLuck(1000);
+		assertEquals(1000, store.size());
+		assertEquals(0, store.getSkill(999));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void skillStoreRejectsAddLuck() {
+		new BeanStore(false).addLuck(1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void storeRejectsTooManyBeans() {
+		BeanStore store = new BeanStore(true);
+		store.addLuck(BeanStore.MAX_SIZE);
+		store.addLuck(1);
+	}
+}
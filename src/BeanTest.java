@@ -85,6 +85,29 @@ public class BeanTest {
 		assertEquals(3, skillBean.getXpos());
 	}
 
+	@Test
+	public void fallCountsRights() {
+		// only the lowest three bits count for three pegs
+		when(rand.nextLong()).thenReturn(0xF0L | 0x5L);
+		luckBean.fall(3);
+		assertEquals(3, luckBean.getYpos());
+		assertEquals(2, luckBean.getXpos());
+	}
+
+	@Test
+	public void countRightsTallBoard() {
+		when(rand.nextLong()).thenReturn(-1L);
+		assertEquals(70, Bean.countRights(new JdkBeanRandom(rand), 70));
+	}
+
+	@Test
+	public void fallSkill() {
+		skillBean = new Bean(false, rand, 2, 0, 0);
+		skillBean.fall(9);
+		assertEquals(9, skillBean.getYpos());
+		assertEquals(2, skillBean.getXpos());
+	}
+
 	@Test
 	public void resetMovement() {
 		skillBean = new Bean(false, rand);
@@ -95,4 +118,16 @@ public class BeanTest {
 		assertEquals(0, skillBean.getXpos());
 		assertEquals(0, skillBean.getYpos());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void reinitAsNewBean() {
+		skillBean = new Bean(false, rand, 2, 0, 0);
+		skillBean.goRight();
+		// gives skill == 6
+		when(rand.nextGaussian()).thenReturn(1.0);
+		skillBean.reinit(false, new JdkBeanRandom(rand));
+		assertEquals(0, skillBean.getXpos());
+		assertEquals(0, skillBean.getYpos());
+		assertEquals(6, skillBean.skill);
+	}
+}
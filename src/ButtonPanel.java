@@ -9,11 +9,17 @@ public class ButtonPanel extends JPanel {
 	
 	private RunFastButton _fast;
 
+	private TurboButton _turbo;
+
+	private FinishButton _finish;
+
 	private StopButton _stop;
 
 	private LowerHalfButton _lower;
 	
 	private UpperHalfButton _upper;
+
+	private MiddleHalfButton _middle;
 	
 	private RepeatButton _repeat;
 	
@@ -31,23 +37,40 @@ public class ButtonPanel extends JPanel {
 		_step = new StepButton(m);
 		_slow = new RunSlowButton(m);
 		_fast = new RunFastButton(m);
+		_turbo = new TurboButton(m);
+		_finish = new FinishButton(m);
 		_stop = new StopButton(m);
 		_lower = new LowerHalfButton(m);
 		_upper = new UpperHalfButton(m);
+		_middle = new MiddleHalfButton(m);
 		_repeat = new RepeatButton(m);
 		_clear = new ResetButton(m);
-		setLayout(new FlowLayout());
+		setLayout(new WrapLayout());
 
 		// Add all of the buttons
 
 		add(_step);
 		add(_slow);
 		add(_fast);
+		add(_turbo);
+		add(_finish);
 		add(_stop);
 		add(_lower);
 		add(_upper);
+		add(_middle);
 		add(_repeat);
 		add(_clear);
 	}
 
+	/**
+	 * Enables or disables all of the buttons.
+	 * 
+	 * @param enabled whether the buttons can be pressed
+	 */
+	public void setButtonsEnabled(boolean enabled) {
+		for (Component button : getComponents()) {
+			button.setEnabled(enabled);
+		}
+	}
+
 }
@@ -0,0 +1,97 @@
+/**
+ * CounterBeanRandom: A counter-based BeanRandom. Instead of carrying state from
+ * one number to the next, the bits of a bean's stream are a hash of (seed, bean
+ * index, position in the stream), so any bean's path can be computed on its own
+ * without replaying the beans before it. Peg decisions read the stream one bit
+ * at a time and nextLong() reads 64 bits at once, so stepping a bean and
+ * completing it with Bean.countRights() use exactly the same bits. Skills come
+ * from a separate stream so they never shift the peg decisions.
+ *
+ * <p>Sequential, parallel and sharded runs therefore land every bean in the
+ * same slot as long as they agree on the bean indices. Use forBean() to get the
+ * stream of a particular bean; a generator created from a seed alone is the
+ * stream of bean 0.
+ */
+
+public class CounterBeanRandom implements BeanRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final long seed;
+	private final long beanKey;		// hash of (seed, bean index)
+	private long position;			// number of bits of the stream used so far
+	private long gaussianCount;		// number of Gaussians drawn so far
+
+	/**
+	 * Constructor - creates the stream of bean 0 for the given seed.
+	 * 
+	 * @param seed the seed
+	 */
+	CounterBeanRandom(long seed) {
+		this(seed, 0);
+	}
+
+	/**
+	 * Constructor - creates the stream of the given bean for the given seed.
+	 * 
+	 * @param seed      the seed
+	 * @param beanIndex the index of the bean
+	 */
+	CounterBeanRandom(long seed, long beanIndex) {
+		this.seed = seed;
+		this.beanKey = XoroshiroBeanRandom.mix(XoroshiroBeanRandom.mix(seed) + beanIndex * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Returns the given 64-bit block of this bean's stream. Negative blocks hold
+	 * the Gaussian stream.
+	 * 
+	 * @param block index of the block
+	 * @return the random bits of the block
+	 */
+	private long block(long block) {
+		return XoroshiroBeanRandom.mix(beanKey + (block + 1) * GOLDEN_GAMMA);
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		long bit = block(position >>> 6) >>> (position & 63);
+		position++;
+		return (bit & 1) != 0;
+	}
+
+	@Override
+	public long nextLong() {
+		int offset = (int) (position & 63);
+		long bits = block(position >>> 6) >>> offset;
+		if (offset != 0) {
+			bits |= block((position >>> 6) + 1) << (Long.SIZE - offset);
+		}
+		position += Long.SIZE;
+		return bits;
+	}
+
+	@Override
+	public double nextGaussian() {
+		double u1 = ((block(-2 * gaussianCount - 2) >>> 11) + 1) * 0x1.0p-53;
+		double u2 = (block(-2 * gaussianCount - 3) >>> 11) * 0x1.0p-53;
+		gaussianCount++;
+		return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+	}
+
+	@Override
+	public BeanRandom forBean(long beanIndex) {
+		return new CounterBeanRandom(seed, beanIndex);
+	}
+
+	/**
+	 * Beans are told apart by index rather than by the order they draw in, so a
+	 * split is simply another generator for the same seed.
+	 * 
+	 * @return a generator for the same seed
+	 */
+	@Override
+	public BeanRandom split() {
+		return new CounterBeanRandom(seed);
+	}
+}
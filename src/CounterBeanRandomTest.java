@@ -0,0 +1,28 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CounterBeanRandomTest {
+
+	@Test
+	public void counterBeanIsReproducible() {
+		BeanRandom first = new CounterBeanRandom(9).forBean(12345);
+		BeanRandom second = new CounterBeanRandom(9).forBean(12345);
+		first.nextBoolean();
+		second.nextBoolean();
+		assertEquals(first.nextLong(), second.nextLong());
+		assertEquals(first.nextGaussian(), second.nextGaussian(), 0.0);
+	}
+
+	@Test
+	public void beansGetDifferentStreams() {
+		BeanRandom rand = new CounterBeanRandom(9);
+		assertNotEquals(rand.forBean(1).nextLong(), rand.forBean(2).nextLong());
+	}
+
+	@Test
+	public void seedsGetDifferentStreams() {
+		assertNotEquals(new CounterBeanRandom(9).forBean(1).nextLong(),
+				new CounterBeanRandom(10).forBean(1).nextLong());
+	}
+}
@@ -0,0 +1,28 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+
+public class FinishButton extends JButton {
+
+	private MainPanel _m;
+
+	/**
+	 * Constructor - Adds a listener to the button.
+	 * 
+	 * @param m the main animation panel where all the action happens
+	 */
+	public FinishButton(MainPanel m) {
+		super("Finish");
+		_m = m;
+		addActionListener(new FinishButtonListener());
+	}
+
+	class FinishButtonListener implements ActionListener {
+
+		public void actionPerformed(ActionEvent e) {
+			_m.finish();
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+import gov.nasa.jpf.annotation.FilterField;
+
+import java.util.Random;
+
+/**
+ * JdkBeanRandom: A BeanRandom backed by a java.util.Random, for callers that
+ * already have one.
+ */
+
+public class JdkBeanRandom implements BeanRandom {
+
+	@FilterField private Random rand;
+
+	/**
+	 * Constructor - wraps the given Random.
+	 * 
+	 * @param rand the random number generator to draw from
+	 */
+	JdkBeanRandom(Random rand) {
+		this.rand = rand;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return rand.nextBoolean();
+	}
+
+	@Override
+	public long nextLong() {
+		return rand.nextLong();
+	}
+
+	@Override
+	public double nextGaussian() {
+		return rand.nextGaussian();
+	}
+
+	@Override
+	public BeanRandom split() {
+		return new JdkBeanRandom(new Random(rand.nextLong()));
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * LuckStepBenchmark: Compares the cost of moving luck beans one peg with
+ * Bean.goRight(), with a counts-only machine stepping bean by bean, and with a
+ * counts-only machine stepping in bulk with LuckStepKernel. Each is run once
+ * to warm up the JIT compiler and then timed.
+ */
+
+public class LuckStepBenchmark {
+
+	public static void showUsage() {
+		System.out.println("Usage: java LuckStepBenchmark [<number of beans> <number of slots> <drop rate>]");
+		System.out.println("Example: java LuckStepBenchmark 2000000 64 4096");
+	}
+
+	/**
+	 * Moves beanCount Bean objects through the pegs with goRight().
+	 *
+	 * @param beanCount number of beans
+	 * @param pegs      number of pegs each bean falls through
+	 * @return the sum of the x positions, so the work cannot be optimized away
+	 */
+	private static long runBeans(int beanCount, int pegs) {
+		BeanRandom rand = new XoroshiroBeanRandom(1632);
+		long sum = 0;
+		for (int i = 0; i < beanCount; i++) {
+			Bean bean = new Bean(true, rand);
+			for (int p = 0; p < pegs; p++) {
+				bean.goRight();
+			}
+			sum += bean.getXpos();
+		}
+		return sum;
+	}
+
+	/**
+	 * Steps beanCount beans through a counts-only luck machine.
+	 *
+	 * @param beanCount number of beans
+	 * @param slotCount number of slots
+	 * @param dropRate  number of beans dropped per step
+	 * @param bulk      whether to step in bulk with LuckStepKernel
+	 * @return the sum of the slot numbers of the landed beans
+	 */
+	private static long runMachine(int beanCount, int slotCount, int dropRate, boolean bulk) {
+		BeanCounterLogic logic = new BeanCounterLogic(slotCount, true, new XoroshiroBeanRandom(1632));
+		logic.setDropRate(dropRate);
+		logic.setBulkLuck(bulk);
+		logic.reset(beanCount);
+		logic.runUntilDone();
+		return (long) logic.getSlotBeanSum();
+	}
+
+	/**
+	 * Prints the time per bean per peg of one run.
+	 *
+	 * @param name    what was run
+	 * @param start   System.nanoTime() before the run
+	 * @param beanPegs number of beans times number of pegs
+	 * @param result  the result of the run
+	 */
+	private static void report(String name, long start, double beanPegs, long result) {
+		double ns = (System.nanoTime() - start) / beanPegs;
+		System.out.printf("%-28s %7.3f ns per bean per peg (checksum %d)%n", name, ns, result);
+	}
+
+	/**
+	 * Main method. Runs the benchmark.
+	 *
+	 * @param args optionally the number of beans, the number of slots and the
+	 *             drop rate
+	 */
+	public static void main(String[] args) {
+		int beanCount = 2000000;
+		int slotCount = 64;
+		int dropRate = 4096;
+		if (args.length == 3) {
+			try {
+				beanCount = Integer.parseInt(args[0]);
+				slotCount = Integer.parseInt(args[1]);
+				dropRate = Integer.parseInt(args[2]);
+			} catch (NumberFormatException ne) {
+				showUsage();
+				return;
+			}
+		} else if (args.length != 0) {
+			showUsage();
+			return;
+		}
+		if (beanCount < 0 || slotCount < 1 || dropRate < 1) {
+			showUsage();
+			return;
+		}
+		int pegs = slotCount - 1;
+		double beanPegs = Math.max((double) beanCount * pegs, 1);
+
+		for (int round = 0; round < 2; round++) {
+			boolean timed = round == 1;
+			long start = System.nanoTime();
+			long result = runBeans(beanCount, pegs);
+			if (timed) {
+				report("Bean.goRight", start, beanPegs, result);
+			}
+			start = System.nanoTime();
+			result = runMachine(beanCount, slotCount, dropRate, false);
+			if (timed) {
+				report("counts-only, bean by bean", start, beanPegs, result);
+			}
+			start = System.nanoTime();
+			result = runMachine(beanCount, slotCount, dropRate, true);
+			if (timed) {
+				report("counts-only, LuckStepKernel", start, beanPegs, result);
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LuckStepKernelTest {
+
+	@Test
+	public void luckStepKernelAddsBits() {
+		int[] x = new int[100];
+		LuckStepKernel.step(x, 1, 99, new XoroshiroBeanRandom(20));
+		BeanRandom bits = new XoroshiroBeanRandom(20);
+		long first = bits.nextLong();
+		long second = bits.nextLong();
+		assertEquals(0, x[0]);
+		assertEquals(0, x[99]);
+		for (int i = 1; i < 99; i++) {
+			long word = i <= 64 ? first : second;
+			assertEquals((word >>> ((i - 1) % 64)) & 1, x[i]);
+		}
+	}
+
+	@Test
+	public void emptyRangeDrawsNothing() {
+		BeanRandom rand = new XoroshiroBeanRandom(21);
+		int[] x = new int[4];
+		LuckStepKernel.step(x, 2, 2, rand);
+		assertArrayEquals(new int[4], x);
+		assertEquals(new XoroshiroBeanRandom(21).nextLong(), rand.nextLong());
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * MachineSnapshot: An immutable copy of everything MainPanel draws, taken by
+ * the simulation thread after the machine changes. The Event Dispatch Thread
+ * only ever reads snapshots, so it never touches the BeanCounterLogic while the
+ * simulation thread is stepping it.
+ */
+
+public final class MachineSnapshot {
+
+	private final int _dropRate;
+	private final int[] _beanXs;		// x of the ith bean of row y at y * _dropRate + i
+	private final int[] _slotBeanCounts;
+	private final int _remaining;
+	private final double _average;
+	private final int _median;
+	private final long _epoch;			// bumped whenever beans are put back at the top
+	private final long _step;			// steps taken since then
+
+	/**
+	 * Constructor - copies the state of the machine. Must be called on the
+	 * thread that owns logic.
+	 * 
+	 * @param logic     the machine
+	 * @param slotCount the number of slots in the machine
+	 * @param epoch     how many times beans were put back at the top
+	 * @param step      steps taken since the beans were last put back
+	 */
+	MachineSnapshot(BeanCounterLogic logic, int slotCount, long epoch, long step) {
+		_dropRate = logic.getDropRate();
+		_beanXs = new int[slotCount * _dropRate];
+		for (int y = 0; y < slotCount; y++) {
+			for (int i = 0; i < _dropRate; i++) {
+				_beanXs[y * _dropRate + i] = logic.getInFlightBeanXPos(y, i);
+			}
+		}
+		_slotBeanCounts = new int[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			_slotBeanCounts[i] = logic.getSlotBeanCount(i);
+		}
+		_remaining = logic.getRemainingBeanCount();
+		_average = logic.getAverageSlotBeanCount();
+		_median = logic.getMedianSlot();
+		_epoch = epoch;
+		_step = step;
+	}
+
+	public int getDropRate() {
+		return _dropRate;
+	}
+
+	/**
+	 * Returns the x-coordinate of the ith in-flight bean at a y-coordinate.
+	 * 
+	 * @param yPos the y-coordinate
+	 * @param i    which of the beans at that y-coordinate, from 0
+	 * @return the x-coordinate, or BeanCounterLogic.NO_BEAN_IN_YPOS
+	 */
+	public int getBeanXPos(int yPos, int i) {
+		return _beanXs[yPos * _dropRate + i];
+	}
+
+	public int getSlotBeanCount(int i) {
+		return _slotBeanCounts[i];
+	}
+
+	public int getRemainingBeanCount() {
+		return _remaining;
+	}
+
+	public double getAverageSlotBeanCount() {
+		return _average;
+	}
+
+	/**
+	 * @return the median slot, or -1 if there are no beans in slots
+	 */
+	public int getMedianSlot() {
+		return _median;
+	}
+
+	/**
+	 * @param other another snapshot, may be null
+	 * @return whether the slots of both snapshots hold the same numbers of beans
+	 */
+	public boolean sameSlotCounts(MachineSnapshot other) {
+		return other != null && Arrays.equals(other._slotBeanCounts, _slotBeanCounts);
+	}
+
+	/**
+	 * @param other another snapshot, may be null
+	 * @return whether both snapshots show the same average, remaining beans and median
+	 */
+	public boolean sameStats(MachineSnapshot other) {
+		return other != null && other._average == _average && other._remaining == _remaining
+				&& other._median == _median;
+	}
+
+	/**
+	 * Returns whether this snapshot is exactly one step after the given one, so
+	 * that every bean in it either just moved down one row or was just dropped.
+	 * 
+	 * @param previous the earlier snapshot, or null
+	 * @return whether this snapshot follows previous by one step
+	 */
+	public boolean followsByOneStep(MachineSnapshot previous) {
+		return previous != null && previous._epoch == _epoch && previous._step + 1 == _step
+				&& previous._dropRate == _dropRate;
+	}
+}
@@ -1,4 +1,5 @@
 import java.awt.*;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 
 public class MainFrame {
@@ -12,14 +13,21 @@ public class MainFrame {
 
 	private ButtonPanel _buttonPanel;
 
+	private JProgressBar _progressBar;
+
 	/**
 	 * Constructor - creates the main panel. Inside it is the main panel and the
-	 * button panel.
+	 * button panel. The window is shown straight away; the machine is built on a
+	 * background thread, with a progress bar shown and the buttons disabled until
+	 * it is ready.
 	 * 
 	 * @param beanCount number of beans in the machine
 	 * @param luck      whether beans progress through pure luck (or skill)
+	 * @param rand      the random number generator for the beans
+	 * @param dropRate  number of beans dropped at the top per step
+	 * @param stepDuration how long (ns) beans take to move down one row
 	 */
-	public MainFrame(int beanCount, boolean luck) {
+	public MainFrame(int beanCount, boolean luck, BeanRandom rand, int dropRate, long stepDuration) {
 
 		_frame.setSize(MainFrame.WIDTH, MainFrame.HEIGHT);
 		// Close program when window is closed
@@ -27,14 +35,59 @@ public class MainFrame {
 
 		// Add Main Panel and Button Panel
 
-		_mainPanel = new MainPanel(beanCount, luck);
+		_mainPanel = new MainPanel(beanCount, luck, rand, dropRate);
+		_mainPanel.setStepDuration(stepDuration);
 
 		_buttonPanel = new ButtonPanel(_mainPanel);
 
+		_buttonPanel.setButtonsEnabled(false);
+
+		_progressBar = new JProgressBar();
+		_progressBar.setIndeterminate(true);
+		_progressBar.setString("Building machine with " + beanCount + " beans");
+		_progressBar.setStringPainted(true);
+
+		_frame.add(_progressBar, BorderLayout.NORTH);
 		_frame.add(_mainPanel, BorderLayout.CENTER);
 		_frame.add(_buttonPanel, BorderLayout.SOUTH);
 
 		_frame.setVisible(true);
+
+		new MachineBuilder().execute();
+	}
+
+	/**
+	 * Builds the machine off the Event Dispatch Thread, then starts it and
+	 * unlocks the buttons. If the machine cannot be built, the error is shown
+	 * and the window is closed.
+	 */
+	class MachineBuilder extends SwingWorker<SimulationThread, Void> {
+
+		@Override
+		protected SimulationThread doInBackground() {
+			return _mainPanel.buildMachine();
+		}
+
+		@Override
+		protected void done() {
+			SimulationThread simulation;
+			try {
+				simulation = get();
+			} catch (InterruptedException | ExecutionException e) {
+				// for example an OutOfMemoryError for too many beans
+				Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+				_frame.remove(_progressBar);
+				_frame.revalidate();
+				JOptionPane.showMessageDialog(_frame, "Could not build the machine: " + cause,
+						"Bean Counter", JOptionPane.ERROR_MESSAGE);
+				_frame.dispose();
+				return;
+			}
+			_frame.remove(_progressBar);
+			_frame.revalidate();
+			_mainPanel.start(simulation);
+			_buttonPanel.setButtonsEnabled(true);
+		}
 	}
 
 }
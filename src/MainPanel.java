@@ -3,35 +3,57 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 /**
  * Code by @author Wonsun Ahn
  *
  * <p>MainPanel: This is the display for the machine. Most internal state is
- * encapsulated inside _logic. This class mainly handles the display of that
- * internal state animations between frames.
+ * encapsulated inside _logic, which is stepped on its own SimulationThread.
+ * This class mainly handles the display of that internal state and animations
+ * between frames. A Swing Timer picks up the latest MachineSnapshot once per
+ * frame, so the Event Dispatch Thread never waits on the machine. The pegs are
+ * drawn once into an image for each panel size, and each frame only repaints
+ * the parts of the panel that changed: the beans that moved, and the bars and
+ * statistics when the snapshot changes them.
  */
 
 public class MainPanel extends JPanel {
 
-	private BeanCounterLogic _logic;	// The core logic of the program
-	private Bean[] _beans;				// The beans in the machine
+	private BeanCounterLogic _logic;	// The core logic of the program, owned by _simulation
+	private SimulationThread _simulation;	// Steps _logic and publishes snapshots of it
+	private int _beanCount;				// The number of beans in the machine
+	private boolean _isLuck;			// Whether beans progress through pure luck (or skill)
+	private BeanRandom _rand;			// Draws a new seed for the luck beans of every run
+	private long _skillSeed;			// The seed of the skill beans, the same for every run
+	private int _dropRate;				// The number of beans dropped at the top per step
 
+	private Timer _frameTimer;			// Fires once per display frame
+	private MachineSnapshot _shown;		// The snapshot being displayed
+
+	// Bean positions are indexed by row * drop rate + the bean's place in its row
 	private Point[] _beanPositions;		// Current bean positions in physical coordinates
+	private Point[] _startPositions;	// Positions the beans started the current step's animation from
 	private Point[] _targetPositions;	// Target positions that the beans need to move to
-
-	private int _timeBetweenFrames;		// Time (ms) between bean movement animation frames
-	private int _timeBetweenSteps;		// Time (ms) that is paused before executing the next step
-
-	private boolean _isRunning;			// Is the bean counter running now?
+	private long _animationStart;		// System.nanoTime() when the current step's animation started
+	private long _animationDuration;	// How long (ns) the current step's animation takes
+	private long _stepDuration;			// How long (ns) the beans take to move down one row
+	private long _runPeriod;			// Time (ns) between steps while running, 0 when stopped
+	private boolean _turbo;				// Whether running in turbo mode, where beans are not drawn
 
 	private int _barHeight;				// The height reserved for bar graphs in the panel
 
+	private Dimension _layerSize;		// The panel size _pegLayer and _beanPositions were computed for
+	private BufferedImage _pegLayer;	// The pegs, drawn once for _layerSize
+
 	public static final int SLOT_COUNT = 10;
 	public static final int PEG_SIZE = 10;
 	public static final int BEAN_SIZE = 10;
@@ -39,57 +61,90 @@ public class MainPanel extends JPanel {
 	public static final int BOTTOM_MARGIN = 30;
 	public static final int BAR_TEXT_HEIGHT = 20;
 
+	public static final long STEP_DURATION = TimeUnit.MILLISECONDS.toNanos(300);	// when not running
+	public static final long SLOW_STEP_PERIOD = TimeUnit.MILLISECONDS.toNanos(500);
+	public static final long FAST_STEP_PERIOD = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final Font STATS_FONT = new Font("Courier", Font.PLAIN, 20);
+	private static final DecimalFormat STATS_FORMAT = new DecimalFormat("#.##");	// only used on the EDT
+	private static final int STATS_WIDTH = 200;
+	private static final int STATS_HEIGHT = TOP_MARGIN + 70;
+
 	/**
-	 * Constructor - creates the main animation panel for the machine.
+	 * Constructor - creates the main animation panel for the machine. The
+	 * machine itself is built by buildMachine() and shown once start() is
+	 * called; until then only the pegs are drawn.
 	 * 
 	 * @param beanCount number of beans in the machine
 	 * @param isLuck    whether beans progress through pure luck (or skill)
+	 * @param rand      the random number generator the beans are seeded from
+	 * @param dropRate  number of beans dropped at the top per step
 	 */
-	public MainPanel(int beanCount, boolean isLuck) {
+	public MainPanel(int beanCount, boolean isLuck, BeanRandom rand, int dropRate) {
 		super();
 		
-		// Create the internal logic
-		_logic = new BeanCounterLogic(SLOT_COUNT);
-		// Create the beans
-		_beans = new Bean[beanCount];
-		for (int i = 0; i < beanCount; i++) {
-			_beans[i] = new Bean(isLuck, new Random());
-		}
-		// Initialize the logic with the beans
-		_logic.reset(_beans);
-		// Set some display related parameters
-		_timeBetweenFrames = 10;
-		_timeBetweenSteps = 100;
+		_beanCount = beanCount;
+		_isLuck = isLuck;
+		_rand = rand;
+		_skillSeed = rand.nextLong();
+		_dropRate = dropRate;
+		_stepDuration = STEP_DURATION;
 		// Heuristically maximum height of a bell curve with some headroom
 		_barHeight = (int) Math.round(beanCount * 0.27) + 10; 
 		setBackground(Color.WHITE);
 	}
 
 	/**
-	 * Move a bean one pixel from p to q.
+	 * Creates the internal logic and fills it with the beans. May be called off
+	 * the Event Dispatch Thread, but only once, and before start().
 	 * 
-	 * @param p current position of the bean
-	 * @param q target position of the bean
-	 * @return whether current position already equals target position
+	 * @return the simulation of the machine, not yet started
 	 */
-	private boolean moveOnePixel(Point p, Point q) {
-		boolean arrivedX = false;
-		boolean arrivedY = false;
-		if (p.x > q.x) {
-			p.x--;
-		} else if (p.x < q.x) {
-			p.x++;
-		} else {
-			arrivedX = true;
-		}
-		if (p.y > q.y) {
-			p.y--;
-		} else if (p.y < q.y) {
-			p.y++;
-		} else {
-			arrivedY = true;
-		}
-		return arrivedX && arrivedY;
+	public SimulationThread buildMachine() {
+		_logic = new BeanCounterLogic(SLOT_COUNT);
+		_logic.setDropRate(_dropRate);
+		// Initialize the logic with the beans
+		_logic.reset(_beanCount, newBeans());
+		return new SimulationThread(_logic, SLOT_COUNT);
+	}
+
+	/**
+	 * Returns a source of beans for a run. Beans are made as they are dropped,
+	 * reusing the beans of the last run. Skill beans always come from the same
+	 * seed, so every run has the same skills; a skill bean's path depends on
+	 * its skill alone. Luck beans get a new seed, so every run takes new paths.
+	 * 
+	 * @return the bean source
+	 */
+	private IntFunction<Bean> newBeans() {
+		return _logic.getBeanPool().source(_isLuck, _isLuck ? _rand.nextLong() : _skillSeed);
+	}
+
+	/**
+	 * Hands the machine over to its simulation thread and starts drawing frames.
+	 * 
+	 * @param simulation the simulation returned by buildMachine()
+	 */
+	public void start(SimulationThread simulation) {
+		_simulation = simulation;
+		_simulation.start();
+		_frameTimer = new Timer((int) TimeUnit.NANOSECONDS.toMillis(SimulationThread.FRAME_NANOS),
+				e -> nextFrame());
+		_frameTimer.start();
+		repaint();
+	}
+
+	/**
+	 * Move a bean to where it is a fraction of the way from p to q.
+	 * 
+	 * @param bean     current position of the bean
+	 * @param p        position of the bean when the animation started
+	 * @param q        target position of the bean
+	 * @param fraction how far along the bean is, from 0 to 1
+	 */
+	private static void interpolate(Point bean, Point p, Point q, double fraction) {
+		bean.x = p.x + (int) Math.round((q.x - p.x) * fraction);
+		bean.y = p.y + (int) Math.round((q.y - p.y) * fraction);
 	}
 
 	/**
@@ -114,82 +169,227 @@ public class MainPanel extends JPanel {
 	}
 
 	/**
-	 * Calculates all the in-flight bean positions (in physical coordinates) from
-	 * _logic.
+	 * Calculates all the in-flight bean positions (in physical coordinates) in
+	 * a snapshot.
 	 * 
+	 * @param snapshot the snapshot of the machine
 	 * @return an array of in-flight bean positions
 	 */
-	private Point[] getBeanPositions() {
-		Point[] positions = new Point[SLOT_COUNT];
+	private Point[] getBeanPositions(MachineSnapshot snapshot) {
+		int dropRate = snapshot.getDropRate();
+		Point[] positions = new Point[SLOT_COUNT * dropRate];
 		for (int yPos = 0; yPos < SLOT_COUNT; yPos++) {
-			int xPos = _logic.getInFlightBeanXPos(yPos);
-			if (xPos != BeanCounterLogic.NO_BEAN_IN_YPOS) {
-				positions[yPos] = logicalToPhysical(new Point(xPos, yPos));
-				positions[yPos].y -= PEG_SIZE + 5;
-			} else {
-				positions[yPos] = null;
+			for (int j = 0; j < dropRate; j++) {
+				int xPos = snapshot.getBeanXPos(yPos, j);
+				int i = yPos * dropRate + j;
+				if (xPos != BeanCounterLogic.NO_BEAN_IN_YPOS) {
+					positions[i] = logicalToPhysical(new Point(xPos, yPos));
+					positions[i].y -= PEG_SIZE + 5;
+				} else {
+					positions[i] = null;
+				}
 			}
 		}
 		return positions;
 	}
 
 	/**
-	 * Advance the machine one step.
+	 * Called by the frame timer on the Event Dispatch Thread. Picks up the
+	 * latest snapshot of the machine and moves the beans towards it.
 	 */
-	private void runOneStep() {
-		// Get current positions
-		_beanPositions = getBeanPositions();
-		// Drop the last bean into the slot
-		_beanPositions[SLOT_COUNT - 1] = null;
-		// Advance one step
-		_logic.advanceStep();
-		// Get new positions
-		_targetPositions = getBeanPositions();
-		// Repaint
-		repaint();
+	private void nextFrame() {
+		MachineSnapshot latest = _simulation.getSnapshot();
+		if (latest != _shown) {
+			MachineSnapshot previous = _shown;
+			repaintBeans(_beanPositions);
+			if (_turbo) {
+				// Beans move too fast to follow: leave them out and only update the bars and stats
+				_beanPositions = new Point[SLOT_COUNT * latest.getDropRate()];
+				_targetPositions = null;
+			} else if (latest.followsByOneStep(previous)) {
+				// Animate from the positions before the step, dropping the beans in
+				// the last row into the slots
+				int dropRate = latest.getDropRate();
+				_startPositions = getBeanPositions(previous);
+				Arrays.fill(_startPositions, (SLOT_COUNT - 1) * dropRate, SLOT_COUNT * dropRate, null);
+				_beanPositions = getBeanPositions(previous);
+				Arrays.fill(_beanPositions, (SLOT_COUNT - 1) * dropRate, SLOT_COUNT * dropRate, null);
+				_targetPositions = getBeanPositions(latest);
+				_animationStart = System.nanoTime();
+				// finish moving before the next step is due
+				_animationDuration = _runPeriod == 0 ? _stepDuration : Math.min(_stepDuration, _runPeriod);
+			} else {
+				// Several steps at once or beans put back at the top: just show them
+				_beanPositions = getBeanPositions(latest);
+				_targetPositions = null;
+			}
+			_shown = latest;
+			repaintBeans(_beanPositions);
+			if (!latest.sameSlotCounts(previous)) {
+				repaintBars(previous);
+			}
+			if (!latest.sameStats(previous)) {
+				repaint(getStatsBounds());
+			}
+		} else if (_targetPositions != null) {
+			repaintBeans(_beanPositions);
+			// Beans are placed by the time elapsed, so a late frame skips ahead
+			double fraction = Math.min(1.0, (double) (System.nanoTime() - _animationStart) / _animationDuration);
+			int dropRate = _shown.getDropRate();
+			// a bean keeps its place in its row as it moves down one row
+			for (int i = 0; i < (SLOT_COUNT - 1) * dropRate; i++) {
+				if (_beanPositions[i] != null && _targetPositions[i + dropRate] != null) {
+					interpolate(_beanPositions[i], _startPositions[i], _targetPositions[i + dropRate], fraction);
+				}
+			}
+			if (fraction >= 1.0) {
+				// Now that beans have arrived, show them where the machine has them
+				_beanPositions = getBeanPositions(_shown);
+				_targetPositions = null;
+			}
+			repaintBeans(_beanPositions);
+		}
+	}
+
+	/**
+	 * Requests a repaint of the smallest rectangle that covers all the beans.
+	 * 
+	 * @param positions bean positions in physical coordinates, may be null
+	 */
+	private void repaintBeans(Point[] positions) {
+		if (positions == null) {
+			return;
+		}
+		Rectangle dirty = null;
+		for (Point p : positions) {
+			if (p == null) {
+				continue;
+			}
+			Rectangle sprite = new Rectangle(p.x, p.y, BEAN_SIZE + 1, BEAN_SIZE + 1);
+			dirty = dirty == null ? sprite : dirty.union(sprite);
+		}
+		if (dirty != null) {
+			repaint(dirty);
+		}
+	}
+
+	/**
+	 * Requests a repaint of the bars, covering both the bars shown before and
+	 * the bars of the shown snapshot.
+	 * 
+	 * @param previous the snapshot shown before, may be null
+	 */
+	private void repaintBars(MachineSnapshot previous) {
+		Rectangle dirty = getBarsBounds(_shown);
+		if (previous != null) {
+			dirty = dirty.union(getBarsBounds(previous));
+		}
+		repaint(dirty);
+	}
+
+	/**
+	 * @param snapshot the snapshot of the machine
+	 * @return the area of the panel covered by the bars of a snapshot and their labels
+	 */
+	private Rectangle getBarsBounds(MachineSnapshot snapshot) {
+		Dimension d = getSize();
+		int tallest = _barHeight;
+		for (int i = 0; i < SLOT_COUNT; i++) {
+			tallest = Math.max(tallest, snapshot.getSlotBeanCount(i));
+		}
+		int top = Math.max(0, d.height - BOTTOM_MARGIN - BAR_TEXT_HEIGHT - tallest);
+		return new Rectangle(0, top, d.width, d.height - top);
+	}
+
+	/**
+	 * @return the area of the panel covered by the statistics
+	 */
+	private Rectangle getStatsBounds() {
+		return new Rectangle(getSize().width - STATS_WIDTH, 0, STATS_WIDTH, STATS_HEIGHT);
 	}
 
 	/**
 	 * Advance the machine one step. Stop the machine if running continuously.
 	 */
 	public void step() {
-		_isRunning = false;
-		_timeBetweenFrames = 10;
-		runOneStep();
+		_runPeriod = 0;
+		_turbo = false;
+		_simulation.step();
 	}
 
 	/**
 	 * Run the machine continuously in slow mode.
 	 */
 	public void runSlow() {
-		_isRunning = true;
-		_timeBetweenFrames = 10;
-		_timeBetweenSteps = 100;
-		runOneStep();
+		_turbo = false;
+		_runPeriod = SLOW_STEP_PERIOD;
+		_simulation.runContinuously(SLOW_STEP_PERIOD);
 	}
 
 	/**
 	 * Run the machine continuously in fast mode.
 	 */
 	public void runFast() {
-		_isRunning = true;
-		_timeBetweenFrames = 1;
-		_timeBetweenSteps = 1;
-		runOneStep();
+		_turbo = false;
+		_runPeriod = FAST_STEP_PERIOD;
+		_simulation.runContinuously(FAST_STEP_PERIOD);
+	}
+
+	/**
+	 * Run the machine as fast as it can step. Beans in flight are not drawn;
+	 * only the bars and statistics are updated, once per frame. Any other
+	 * button, halving included, leaves turbo mode.
+	 */
+	public void runTurbo() {
+		_runPeriod = 0;
+		_turbo = true;
+		_simulation.runTurbo();
+	}
+
+	/**
+	 * Stop the machine and land all the remaining and in-flight beans at once.
+	 */
+	public void finish() {
+		_runPeriod = 0;
+		_turbo = false;
+		_simulation.finish();
+	}
+
+	/**
+	 * Sets how long beans take to move down one row, whatever the size of the
+	 * panel. While running, beans move at most for the time between steps.
+	 * 
+	 * @param nanos the duration of a step's animation in nanoseconds
+	 */
+	public void setStepDuration(long nanos) {
+		if (nanos <= 0) {
+			throw new IllegalArgumentException("Step duration must be positive: " + nanos);
+		}
+		_stepDuration = nanos;
 	}
 
 	public void stop() {
-		_isRunning = false;
+		_runPeriod = 0;
+		_turbo = false;
+		_simulation.stopRunning();
 	}
 
 	public void lowerHalf() {
-		_logic.lowerHalf();
-		repaint();
+		_turbo = false;
+		_simulation.changeSlots(logic -> logic.lowerHalf());
 	}
 
 	public void upperHalf() {
-		_logic.upperHalf();
-		repaint();
+		_turbo = false;
+		_simulation.changeSlots(logic -> logic.upperHalf());
+	}
+
+	/**
+	 * Keep only the middle half of the beans in the slots.
+	 */
+	public void middleHalf() {
+		_turbo = false;
+		_simulation.changeSlots(logic -> logic.keepRange(0.25, 0.75));
 	}
 
 	/**
@@ -198,22 +398,20 @@ public class MainPanel extends JPanel {
 	 * with that half of your beans only.
 	 */
 	public void repeat() {
-		_isRunning = false;
-		_logic.repeat();
-		// repeat() clears machine of in-flight beans, so need to refresh positions
-		_beanPositions = getBeanPositions();
-		repaint();
+		_runPeriod = 0;
+		_turbo = false;
+		_simulation.restart(logic -> logic.repeat());
 	}
 
 	/**
-	 * Stop the machine reset with the original beans.
+	 * Stop the machine reset with the original beans. Skill beans get their
+	 * original skills back; luck beans take new paths.
 	 */
 	public void reset() {
-		_isRunning = false;
-		_logic.reset(_beans);
-		// repeat() clears machine of in-flight beans, so need to refresh positions
-		_beanPositions = getBeanPositions();
-		repaint();
+		_runPeriod = 0;
+		_turbo = false;
+		IntFunction<Bean> beans = newBeans();
+		_simulation.restart(logic -> logic.reset(_beanCount, beans));
 	}
 
 	/**
@@ -236,7 +434,7 @@ public class MainPanel extends JPanel {
 	 */
 	public void drawBeans(Graphics g) {
 		g.setColor(Color.BLACK);
-		for (int i = 0; i < SLOT_COUNT; i++) {
+		for (int i = 0; i < _beanPositions.length; i++) {
 			if (_beanPositions[i] != null) {
 				g.fillOval(_beanPositions[i].x, _beanPositions[i].y, BEAN_SIZE, BEAN_SIZE);
 			}
@@ -253,8 +451,8 @@ public class MainPanel extends JPanel {
 		for (int i = 0; i < SLOT_COUNT; i++) {
 			Dimension d = getSize();
 			Point p = logicalToPhysical(new Point(i, SLOT_COUNT));
-			g.fillRect(p.x, d.height - BOTTOM_MARGIN - BAR_TEXT_HEIGHT - _logic.getSlotBeanCount(i),
-					d.width / (SLOT_COUNT + 1), _logic.getSlotBeanCount(i));
+			g.fillRect(p.x, d.height - BOTTOM_MARGIN - BAR_TEXT_HEIGHT - _shown.getSlotBeanCount(i),
+					d.width / (SLOT_COUNT + 1), _shown.getSlotBeanCount(i));
 			g.drawString(String.valueOf(i), p.x + d.width / (SLOT_COUNT + 1) / 2, d.height - BOTTOM_MARGIN);
 		}
 	}
@@ -267,59 +465,65 @@ public class MainPanel extends JPanel {
 	 */
 	public void drawStats(Graphics g) {
 		Dimension d = getSize();
-		g.setFont(new Font("Courier", Font.PLAIN, 20));
-		String average = "Average = " + new DecimalFormat("#.##").format(_logic.getAverageSlotBeanCount());
-		g.drawString(average, d.width - 200, TOP_MARGIN);
-		String remaining = "Remaining = " + _logic.getRemainingBeanCount();
-		g.drawString(remaining, d.width - 200, TOP_MARGIN + 30);
+		g.setFont(STATS_FONT);
+		String average = "Average = " + STATS_FORMAT.format(_shown.getAverageSlotBeanCount());
+		g.drawString(average, d.width - STATS_WIDTH, TOP_MARGIN);
+		String remaining = "Remaining = " + _shown.getRemainingBeanCount();
+		g.drawString(remaining, d.width - STATS_WIDTH, TOP_MARGIN + 30);
+		int medianSlot = _shown.getMedianSlot();
+		String median = "Median = " + (medianSlot < 0 ? "-" : String.valueOf(medianSlot));
+		g.drawString(median, d.width - STATS_WIDTH, TOP_MARGIN + 60);
+	}
+
+	/**
+	 * Draws the pegs once into an image the size of the panel.
+	 * 
+	 * @param d the size of the panel
+	 * @return the image of the pegs, or null if the panel has no area
+	 */
+	private BufferedImage createPegLayer(Dimension d) {
+		if (d.width <= 0 || d.height <= 0) {
+			return null;
+		}
+		BufferedImage layer = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = layer.createGraphics();
+		drawPegs(g);
+		g.dispose();
+		return layer;
 	}
 
 	@Override
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
+		Dimension d = getSize();
+		if (!d.equals(_layerSize)) {
+			// Resized: everything in physical coordinates must be worked out again
+			_layerSize = d;
+			_pegLayer = createPegLayer(d);
+			_beanPositions = null;
+			_targetPositions = null;
+		}
+		if (_pegLayer != null) {
+			g.drawImage(_pegLayer, 0, 0, null);
+		}
+		if (_simulation == null) {
+			// The machine is still being built
+			return;
+		}
+		if (_shown == null) {
+			_shown = _simulation.getSnapshot();
+		}
 		if (_beanPositions == null) {
-			_beanPositions = getBeanPositions();
+			_beanPositions = _turbo ? new Point[SLOT_COUNT * _shown.getDropRate()] : getBeanPositions(_shown);
 		}
-		drawPegs(g);
 		drawBeans(g);
-		drawBars(g);
-		drawStats(g);
-
-		// If we have target positions, we are still moving
-		if (_targetPositions != null) {
-			boolean allArrived = true;
-			for (int i = 0; i < SLOT_COUNT - 1; i++) {
-				if (_beanPositions[i] != null && _targetPositions[i + 1] != null) {
-					allArrived &= moveOnePixel(_beanPositions[i], _targetPositions[i + 1]);
-				}
-			}
-			try {
-				Thread.sleep(_timeBetweenFrames);
-			} catch (InterruptedException ie) {
-				// Nothing to do here
-			}
-			if (allArrived) {
-				// Now that beans have arrived, reset bean positions for the next frame
-				_beanPositions = getBeanPositions();
-				// Remove target positions such that animations stop for this step
-				_targetPositions = null;
-				// If running, take the next step
-				if (_isRunning) {
-					if (Arrays.stream(_beanPositions).filter(p -> p != null).count() == 0) {
-						_isRunning = false;
-					} else {
-						try {
-							Thread.sleep(_timeBetweenSteps);
-						} catch (InterruptedException ie) {
-							// Nothing to do here
-						}
-						runOneStep();
-						return;
-					}
-				}
-			}
-			// Put repaint request on the queue again for the next frame
-			repaint();
+		// Only draw what the repaint asked for
+		Rectangle clip = g.getClipBounds();
+		if (clip == null || clip.intersects(getBarsBounds(_shown))) {
+			drawBars(g);
+		}
+		if (clip == null || clip.intersects(getStatsBounds())) {
+			drawStats(g);
 		}
 	}
 
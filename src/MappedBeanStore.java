@@ -0,0 +1,163 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MappedBeanStore: A BeanStore for skill beans that keeps the skills in a
+ * memory-mapped file instead of an int[] on the heap. The file is mapped in
+ * fixed-size chunks as the store grows, so the operating system pages skills in
+ * and out as needed and a population of billions of beans puts no pressure on
+ * the heap. A chunk is first mapped only 2^12 skills long and is mapped again,
+ * at least twice as long, when it fills up, so a small store keeps a small file. Removing beans from the front only moves a head offset; the live
+ * skills are moved back to the start of the file once the removed ones take up
+ * more room than they do, so repeated repeat() calls do not grow the file
+ * without bound.
+ *
+ * <p>Java cannot unmap a file: the mappings only go away once the garbage
+ * collector frees them, even after close(). Some systems, Windows among them,
+ * refuse to delete a mapped file, so use delete(Path) to remove the file.
+ */
+
+public class MappedBeanStore extends BeanStore implements Closeable {
+
+	private static final int DEFAULT_CHUNK_SHIFT = 26;	// 2^26 skills, 256MB per chunk
+	private static final int MIN_MAPPED_SHIFT = 12;		// 2^12 skills, 16KB first mapped
+
+	private final FileChannel channel;
+	private final int chunkShift;
+	private final long chunkMask;
+	private final List<MappedByteBuffer> chunks = new ArrayList<>();
+	private long head;		// position in the file of the first bean
+
+	/**
+	 * Constructor - creates an empty store of skill beans in the given file. The
+	 * file is created if it does not exist and its contents are discarded.
+	 *
+	 * @param file the file to keep the skills in
+	 * @throws IOException if the file cannot be opened
+	 */
+	MappedBeanStore(Path file) throws IOException {
+		this(file, DEFAULT_CHUNK_SHIFT);
+	}
+
+	/**
+	 * Constructor - creates an empty store that maps 2^chunkShift skills at a time.
+	 *
+	 * @param file       the file to keep the skills in
+	 * @param chunkShift log2 of the number of skills per mapped chunk
+	 * @throws IOException if the file cannot be opened
+	 */
+	MappedBeanStore(Path file, int chunkShift) throws IOException {
+		super(false);
+		if (chunkShift < 0 || chunkShift > 28) {
+			throw new IllegalArgumentException("Chunk shift must be between 0 and 28, got " + chunkShift);
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1L << chunkShift) - 1;
+	}
+
+	@Override
+	public int getSkill(int i) {
+		long position = head + i;
+		return chunks.get((int) (position >>> chunkShift)).getInt((int) (position & chunkMask) << 2);
+	}
+
+	/**
+	 * Writes the skill at a position in the file, mapping a new chunk if needed.
+	 *
+	 * @param position the position in the file
+	 * @param skill    the skill to write
+	 */
+	private void putSkill(long position, int skill) {
+		int chunk = (int) (position >>> chunkShift);
+		int offset = (int) (position & chunkMask);
+		while (chunk >= chunks.size()) {
+			chunks.add(map(chunks.size(), 1 << Math.min(MIN_MAPPED_SHIFT, chunkShift)));
+		}
+		MappedByteBuffer buffer = chunks.get(chunk);
+		if (offset >= buffer.capacity() >> 2) {
+			// map more of the chunk, at least twice as much as before
+			long skills = Math.max(2L * (buffer.capacity() >> 2), offset + 1L);
+			buffer = map(chunk, (int) Math.min(skills, 1L << chunkShift));
+			chunks.set(chunk, buffer);
+		}
+		buffer.putInt(offset << 2, skill);
+	}
+
+	/**
+	 * Maps the start of a chunk of the file.
+	 *
+	 * @param chunk  the index of the chunk
+	 * @param skills the number of skills to map
+	 * @return the mapped skills
+	 */
+	private MappedByteBuffer map(int chunk, int skills) {
+		try {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 4L * ((long) chunk << chunkShift), 4L * skills);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void add(long skill) {
+		checkRoom(1);
+		putSkill(head + size, storedSkill(skill));
+		size++;
+	}
+
+	@Override
+	public void removeFirst(int count) {
+		head += count;
+		size -= count;
+		if (head > size) {
+			// move the live skills to the front so the file stops growing
+			for (int i = 0; i < size; i++) {
+				putSkill(i, getSkill(i));
+			}
+			head = 0;
+		}
+	}
+
+	@Override
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Closes the file. The store must not be used afterwards. The file stays
+	 * mapped until the garbage collector frees the mappings.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		chunks.clear();
+		channel.close();
+	}
+
+	/**
+	 * Deletes the file of a closed store. If the file cannot be deleted yet,
+	 * because the system refuses to delete a file that is still mapped, it is
+	 * deleted when the virtual machine exits instead.
+	 *
+	 * @param file the file the store kept its skills in
+	 */
+	static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			file.toFile().deleteOnExit();
+		}
+	}
+}
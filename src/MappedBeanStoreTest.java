@@ -0,0 +1,74 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedBeanStoreTest {
+
+	@Test
+	public void mappedStoreKeepsSkills() throws IOException {
+		Path file = Files.createTempFile("beans", ".bin");
+		try (MappedBeanStore store = new MappedBeanStore(file, 2)) {
+			for (int i = 0; i < 20; i++) {
+				store.add(i);
+			}
+			store.removeFirst(5);
+			assertEquals(15, store.size());
+			assertEquals(5, store.getSkill(0));
+			// the removed beans now outnumber the rest, so the rest moves to the front
+			store.removeFirst(7);
+			store.add(42);
+			assertEquals(9, store.size());
+			assertEquals(12, store.getSkill(0));
+			assertEquals(42, store.getSkill(8));
+		} finally {
+			MappedBeanStore.delete(file);
+		}
+	}
+
+	@Test
+	public void mappedStoreStartsSmall() throws IOException {
+		Path file = Files.createTempFile("beans", ".bin");
+		try (MappedBeanStore store = new MappedBeanStore(file)) {
+			for (int i = 0; i < 500; i++) {
+				store.add(i);
+			}
+			assertEquals(4 << 12, Files.size(file));
+			// filling the first mapping maps more of the chunk
+			for (int i = 500; i < 10000; i++) {
+				store.add(i);
+			}
+			assertEquals(4 << 14, Files.size(file));
+			assertEquals(499, store.getSkill(499));
+			assertEquals(9999, store.getSkill(9999));
+		} finally {
+			MappedBeanStore.delete(file);
+		}
+	}
+
+	@Test
+	public void mappedStoreMatchesHeap() throws IOException {
+		Path file = Files.createTempFile("beans", ".bin");
+		try (MappedBeanStore store = new MappedBeanStore(file, 8)) {
+			BeanCounterLogic heap = new BeanCounterLogic(10, false, new XoroshiroBeanRandom(17));
+			BeanCounterLogic mapped = new BeanCounterLogic(10, store, new XoroshiroBeanRandom(17));
+			for (BeanCounterLogic machine : new BeanCounterLogic[] {heap, mapped}) {
+				machine.reset(5000);
+				machine.advanceSteps(2000);
+				machine.lowerHalf();
+				machine.repeat();
+				machine.advanceSteps(1000);
+				machine.repeat();
+				machine.runToCompletion();
+			}
+			for (int i = 0; i < 10; i++) {
+				assertEquals(heap.getSlotBeanCount(i), mapped.getSlotBeanCount(i));
+			}
+		} finally {
+			MappedBeanStore.delete(file);
+		}
+	}
+}
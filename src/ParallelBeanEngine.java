@@ -0,0 +1,79 @@
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelBeanEngine: Drops a range of beans from a BeanStore on a ForkJoinPool
+ * and returns the resulting slot counts. The range is split in halves until it
+ * is small enough for one task. Each task gets its own split of the random
+ * number generator and its own histogram, and the histograms are added up as the
+ * tasks are joined, so tasks never share any mutable state. Each bean draws
+ * from rand.forBean(index), so with a CounterBeanRandom the slot counts are
+ * exactly those of a sequential run.
+ */
+
+public class ParallelBeanEngine extends RecursiveTask<SlotHistogram> {
+
+	// Number of beans below which a task drops its beans itself
+	private static final int LEAF_SIZE = 1 << 16;
+
+	private final BeanStore store;
+	private final int from;
+	private final int to;
+	private final int slotCount;
+	private final BeanRandom rand;
+	private final long indexBase;
+
+	/**
+	 * Constructor - creates a task that drops beans from through to - 1 of the
+	 * store through a machine with slotCount slots.
+	 *
+	 * @param store     the beans to drop
+	 * @param from      index of the first bean to drop
+	 * @param to        index after the last bean to drop
+	 * @param slotCount the number of slots in the machine
+	 * @param rand      the random number generator for this task
+	 * @param indexBase bean index of the first bean in the store
+	 */
+	ParallelBeanEngine(BeanStore store, int from, int to, int slotCount, BeanRandom rand, long indexBase) {
+		this.store = store;
+		this.from = from;
+		this.to = to;
+		this.slotCount = slotCount;
+		this.rand = rand;
+		this.indexBase = indexBase;
+	}
+
+	@Override
+	protected SlotHistogram compute() {
+		if (to - from <= LEAF_SIZE) {
+			return dropBeans();
+		}
+		int mid = from + (to - from) / 2;
+		ParallelBeanEngine left = new ParallelBeanEngine(store, from, mid, slotCount, rand.split(), indexBase);
+		ParallelBeanEngine right = new ParallelBeanEngine(store, mid, to, slotCount, rand, indexBase);
+		left.fork();
+		SlotHistogram counts = right.compute();
+		counts.addAll(left.join());
+		return counts;
+	}
+
+	/**
+	 * Drops the beans of this task into a private histogram, the same way as
+	 * BeanCounterLogic.runToCompletion() does.
+	 *
+	 * @return the slot counts of the beans of this task
+	 */
+	private SlotHistogram dropBeans() {
+		SlotHistogram counts = new SlotHistogram(slotCount, false);
+		int pegs = slotCount - 1;
+		if (store.isLuck()) {
+			for (int i = from; i < to; i++) {
+				counts.add(Bean.countRights(rand.forBean(indexBase + i), pegs), 1);
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				counts.add(Bean.skillRights(0, store.getSkill(i), pegs), 1);
+			}
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,204 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SimulationThread: Owns a BeanCounterLogic and is the only thread that touches
+ * it. Buttons post commands to it instead of changing the machine themselves,
+ * and after every change it publishes a MachineSnapshot for the display to
+ * pick up. While running it steps the machine at a fixed period; when the
+ * period is shorter than a display frame, all steps that are due are taken in
+ * one advanceSteps() call and only one snapshot is published per frame, so the
+ * machine can run much faster than it can be drawn. In turbo mode it does not
+ * wait between steps at all, and publishes a snapshot once per frame.
+ */
+
+public class SimulationThread extends Thread {
+
+	public static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+	private static final int TURBO_BATCH = 4096;	// steps taken between checks of the clock in turbo mode
+
+	private final BeanCounterLogic _logic;
+	private final int _slotCount;
+	private final BlockingQueue<Runnable> _commands = new LinkedBlockingQueue<>();
+	private volatile MachineSnapshot _snapshot;
+
+	// Only touched on this thread
+	private long _stepPeriod;			// time (ns) between steps while running, 0 when stopped
+	private boolean _turbo;				// whether running as fast as the machine can step
+	private long _nextStep;				// System.nanoTime() at which the next step is due
+	private long _published;			// System.nanoTime() of the last snapshot
+	private long _epoch;
+	private long _step;
+
+	/**
+	 * Constructor - creates a stopped simulation of the machine. The machine
+	 * must not be used by any other thread once the simulation is started.
+	 * 
+	 * @param logic     the machine
+	 * @param slotCount the number of slots in the machine
+	 */
+	public SimulationThread(BeanCounterLogic logic, int slotCount) {
+		super("Bean simulation");
+		setDaemon(true);
+		_logic = logic;
+		_slotCount = slotCount;
+		publish();
+	}
+
+	/**
+	 * @return the latest snapshot of the machine
+	 */
+	public MachineSnapshot getSnapshot() {
+		return _snapshot;
+	}
+
+	/**
+	 * Stops running and advances the machine one step.
+	 */
+	public void step() {
+		_commands.add(() -> {
+			_stepPeriod = 0;
+			_turbo = false;
+			advance(1);
+		});
+	}
+
+	/**
+	 * Runs the machine continuously until it finishes or is stopped.
+	 * 
+	 * @param stepPeriod time (ns) between steps
+	 */
+	public void runContinuously(long stepPeriod) {
+		_commands.add(() -> {
+			_stepPeriod = Math.max(stepPeriod, 1);
+			_nextStep = System.nanoTime();
+			_turbo = false;
+		});
+	}
+
+	/**
+	 * Starts running the machine as fast as it can step until all beans are in
+	 * the slots or another command is posted.
+	 */
+	public void runTurbo() {
+		_commands.add(() -> {
+			_stepPeriod = 0;
+			_turbo = true;
+		});
+	}
+
+	/**
+	 * Stops running and lands every bean still in the machine at once, using
+	 * BeanCounterLogic.runToCompletion() rather than stepping.
+	 */
+	public void finish() {
+		_commands.add(() -> {
+			_stepPeriod = 0;
+			_turbo = false;
+			_logic.runToCompletion();
+		});
+	}
+
+	/**
+	 * Stops running the machine.
+	 */
+	public void stopRunning() {
+		_commands.add(() -> {
+			_stepPeriod = 0;
+			_turbo = false;
+		});
+	}
+
+	/**
+	 * Changes the beans in the slots, for example by halving them, without
+	 * stopping a machine that runs at a fixed period. Like every other command,
+	 * it leaves turbo mode, which stops the machine.
+	 * 
+	 * @param change the change to make to the machine
+	 */
+	public void changeSlots(Consumer<BeanCounterLogic> change) {
+		_commands.add(() -> {
+			_turbo = false;
+			change.accept(_logic);
+		});
+	}
+
+	/**
+	 * Stops running the machine and puts beans back at the top, for example by
+	 * repeating or resetting it.
+	 * 
+	 * @param change the change to make to the machine
+	 */
+	public void restart(Consumer<BeanCounterLogic> change) {
+		_commands.add(() -> {
+			_stepPeriod = 0;
+			_turbo = false;
+			change.accept(_logic);
+			_epoch++;
+			_step = 0;
+		});
+	}
+
+	/**
+	 * Advances the machine up to n steps and stops running if it finishes.
+	 * 
+	 * @param n the number of steps
+	 */
+	private void advance(long n) {
+		long taken = _logic.advanceSteps(n);
+		_step += taken;
+		if (taken < n) {
+			_stepPeriod = 0;
+			_turbo = false;
+		}
+	}
+
+	/**
+	 * Publishes a snapshot of the machine for the display.
+	 */
+	private void publish() {
+		_snapshot = new MachineSnapshot(_logic, _slotCount, _epoch, _step);
+		_published = System.nanoTime();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Runnable command;
+			try {
+				if (_turbo) {
+					command = _commands.poll();
+				} else if (_stepPeriod == 0) {
+					command = _commands.take();
+				} else {
+					// wake for the next step, but not more often than once per frame
+					long wake = Math.max(_nextStep, _published + FRAME_NANOS);
+					command = _commands.poll(wake - System.nanoTime(), TimeUnit.NANOSECONDS);
+				}
+			} catch (InterruptedException ie) {
+				return;
+			}
+			if (command != null) {
+				command.run();
+				publish();
+				continue;
+			}
+			if (_turbo) {
+				// step in batches until the next frame is due
+				long frameEnd = _published + FRAME_NANOS;
+				do {
+					advance(TURBO_BATCH);
+				} while (_turbo && System.nanoTime() < frameEnd);
+				publish();
+				continue;
+			}
+			// take every step that has come due since the last one
+			long due = (System.nanoTime() - _nextStep) / _stepPeriod + 1;
+			_nextStep += due * _stepPeriod;
+			advance(due);
+			publish();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+/**
+ * SlotFenwickTree: A binary indexed tree over the number of beans in each slot.
+ * Adding beans to a slot, counting the beans in slots 0 through k and finding
+ * the slot that holds the bean of a given rank all take O(log slots), which
+ * makes medians, percentiles and the cut points of upperHalf/lowerHalf cheap on
+ * wide boards.
+ */
+
+public class SlotFenwickTree {
+
+	private final long[] tree;	// 1-based, tree[i] covers slots (i - lowbit(i), i]
+	private final int topBit;	// highest power of two <= number of slots
+
+	/**
+	 * Constructor - creates an empty tree.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 */
+	SlotFenwickTree(int slotCount) {
+		this.tree = new long[slotCount + 1];
+		this.topBit = slotCount == 0 ? 0 : Integer.highestOneBit(slotCount);
+	}
+
+	/**
+	 * Constructor - creates a tree over the given slot counts in O(slots).
+	 * 
+	 * @param counts the number of beans in each slot
+	 */
+	SlotFenwickTree(long[] counts) {
+		this(counts.length);
+		for (int i = 1; i < tree.length; i++) {
+			tree[i] += counts[i - 1];
+			int parent = i + (i & -i);
+			if (parent < tree.length) {
+				tree[parent] += tree[i];
+			}
+		}
+	}
+
+	/**
+	 * Adds beans to a slot. A negative number removes beans.
+	 * 
+	 * @param slot  the slot number
+	 * @param beans the number of beans
+	 */
+	public void add(int slot, long beans) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += beans;
+		}
+	}
+
+	/**
+	 * Returns the number of beans in slots 0 through slot.
+	 * 
+	 * @param slot the last slot to count, or -1 to count none
+	 * @return the number of beans
+	 */
+	public long prefixCount(int slot) {
+		long count = 0;
+		for (int i = slot + 1; i > 0; i -= i & -i) {
+			count += tree[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the slot that holds the bean of the given rank, counting from 0 at
+	 * the lowest slot. That is the lowest slot whose prefix count exceeds rank.
+	 * 
+	 * @param rank the rank of the bean
+	 * @return the slot of the bean, or the number of slots if rank is not less
+	 *         than the number of beans
+	 */
+	public int findSlot(long rank) {
+		int pos = 0;
+		for (int step = topBit; step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next < tree.length && tree[next] <= rank) {
+				pos = next;
+				rank -= tree[next];
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Removes all beans.
+	 */
+	public void clear() {
+		Arrays.fill(tree, 0);
+	}
+}
@@ -0,0 +1,28 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SlotFenwickTreeTest {
+
+	@Test
+	public void fenwickFindsRanks() {
+		SlotFenwickTree tree = new SlotFenwickTree(13);
+		tree.add(0, 2);
+		tree.add(5, 3);
+		tree.add(12, 1);
+		assertEquals(0, tree.findSlot(1));
+		assertEquals(5, tree.findSlot(2));
+		assertEquals(5, tree.findSlot(4));
+		assertEquals(12, tree.findSlot(5));
+		assertEquals(13, tree.findSlot(6));
+		assertEquals(5, tree.prefixCount(11));
+	}
+
+	@Test
+	public void countsFromArray() {
+		SlotFenwickTree tree = new SlotFenwickTree(new long[] { 2, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 1 });
+		assertEquals(2, tree.prefixCount(4));
+		assertEquals(5, tree.prefixCount(11));
+		assertEquals(12, tree.findSlot(5));
+	}
+}
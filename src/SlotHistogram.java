@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * SlotHistogram: The number of beans in each slot, stored as a dense window of
+ * counts that only covers the slots beans have landed in so far. The window
+ * starts empty and at least doubles whenever a bean lands outside it, so a wide
+ * board whose beans pile up around the middle only pays memory and iteration
+ * for that middle. An indexed histogram also keeps a SlotFenwickTree over the
+ * window for prefix counts and rank lookups; it is rebuilt when the window grows.
+ */
+
+public class SlotHistogram {
+
+	private static final int MIN_WINDOW = 16;
+
+	private final int slotCount;
+	private final boolean indexed;
+	private long[] counts = new long[0];
+	private int low;					// first slot of the window
+	private SlotFenwickTree tree;		// over the window, null if not indexed
+
+	/**
+	 * Constructor - creates an empty histogram.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param indexed   whether to support prefixCount and findSlot
+	 */
+	SlotHistogram(int slotCount, boolean indexed) {
+		this.slotCount = slotCount;
+		this.indexed = indexed;
+		if (indexed) {
+			this.tree = new SlotFenwickTree(0);
+		}
+	}
+
+	/**
+	 * @return the first slot of the window; slots below it are empty
+	 */
+	public int getLowSlot() {
+		return low;
+	}
+
+	/**
+	 * @return the slot after the window; it and the slots above it are empty
+	 */
+	public int getHighSlot() {
+		return low + counts.length;
+	}
+
+	/**
+	 * Returns the number of beans in a slot.
+	 * 
+	 * @param slot the slot number
+	 * @return the number of beans
+	 */
+	public long get(int slot) {
+		int i = slot - low;
+		return i >= 0 && i < counts.length ? counts[i] : 0;
+	}
+
+	/**
+	 * Adds beans to a slot. A negative number removes beans.
+	 * 
+	 * @param slot  the slot number
+	 * @param beans the number of beans
+	 */
+	public void add(int slot, long beans) {
+		if (slot < low || slot >= low + counts.length) {
+			grow(slot);
+		}
+		counts[slot - low] += beans;
+		if (indexed) {
+			tree.add(slot - low, beans);
+		}
+	}
+
+	/**
+	 * Adds all beans of another histogram to this one.
+	 * 
+	 * @param other the histogram to add
+	 */
+	public void addAll(SlotHistogram other) {
+		for (int slot = other.getLowSlot(); slot < other.getHighSlot(); slot++) {
+			long beans = other.get(slot);
+			if (beans != 0) {
+				add(slot, beans);
+			}
+		}
+	}
+
+	/**
+	 * Widens the window to cover the given slot, to at least twice its size.
+	 * 
+	 * @param slot the slot to cover
+	 */
+	private void grow(int slot) {
+		int newLow = counts.length == 0 ? slot : Math.min(low, slot);
+		int newHigh = counts.length == 0 ? slot + 1 : Math.max(low + counts.length, slot + 1);
+		// put the extra room on the side that grew, then clamp to the board
+		long extra = Math.max(2L * counts.length, MIN_WINDOW) - (newHigh - newLow);
+		if (extra > 0) {
+			if (slot < low) {
+				newLow = (int) Math.max(newLow - extra, 0);
+			} else {
+				newHigh = (int) Math.min(newHigh + extra, slotCount);
+			}
+		}
+		newLow = Math.max(newLow, 0);
+		newHigh = Math.min(newHigh, slotCount);
+		long[] newCounts = new long[newHigh - newLow];
+		if (counts.length > 0) {
+			System.arraycopy(counts, 0, newCounts, low - newLow, counts.length);
+		}
+		counts = newCounts;
+		low = newLow;
+		if (indexed) {
+			tree = new SlotFenwickTree(counts);
+		}
+	}
+
+	/**
+	 * Returns the number of beans in slots 0 through slot.
+	 * 
+	 * @param slot the last slot to count, or -1 to count none
+	 * @return the number of beans
+	 */
+	public long prefixCount(int slot) {
+		return tree.prefixCount(Math.min(slot - low, counts.length - 1));
+	}
+
+	/**
+	 * Returns the slot that holds the bean of the given rank, counting from 0 at
+	 * the lowest slot.
+	 * 
+	 * @param rank the rank of the bean
+	 * @return the slot of the bean, or the number of slots if rank is not less
+	 *         than the number of beans
+	 */
+	public int findSlot(long rank) {
+		int i = tree.findSlot(rank);
+		return i < counts.length ? low + i : slotCount;
+	}
+
+	/**
+	 * Removes all beans, keeping the window.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		if (indexed) {
+			tree.clear();
+		}
+	}
+}
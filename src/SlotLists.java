@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SlotLists: The beans in each slot of a machine that keeps Bean objects. Like
+ * the counts of a SlotHistogram, the lists are kept in a dense window that only
+ * covers the slots beans have landed in so far and at least doubles whenever a
+ * bean lands outside it. A list is only created once a bean lands in its slot,
+ * so a wide board pays for the middle its beans pile up in, not for its width,
+ * and looking a slot up needs no boxing or hashing.
+ */
+
+public class SlotLists {
+
+	private static final int MIN_WINDOW = 16;
+
+	private final int slotCount;
+	private List<List<Bean>> lists = new ArrayList<>();	// null for slots without a list
+	private int low;					// first slot of the window
+
+	/**
+	 * Constructor - creates a machine's slots without any lists.
+	 *
+	 * @param slotCount the number of slots in the machine
+	 */
+	SlotLists(int slotCount) {
+		this.slotCount = slotCount;
+	}
+
+	/**
+	 * @return the first slot of the window; slots below it have no list
+	 */
+	public int getLowSlot() {
+		return low;
+	}
+
+	/**
+	 * @return the slot after the window; it and the slots above it have no list
+	 */
+	public int getHighSlot() {
+		return low + lists.size();
+	}
+
+	/**
+	 * Returns the list of beans in a slot.
+	 *
+	 * @param slot the slot number
+	 * @return the list, or null if no list was made for the slot
+	 */
+	public List<Bean> get(int slot) {
+		int i = slot - low;
+		return i >= 0 && i < lists.size() ? lists.get(i) : null;
+	}
+
+	/**
+	 * Returns the list of beans in a slot, creating it if there is none yet.
+	 *
+	 * @param slot the slot number
+	 * @return the list
+	 */
+	public List<Bean> getOrCreate(int slot) {
+		List<Bean> list = get(slot);
+		if (list == null) {
+			list = new ArrayList<>();
+			put(slot, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Makes a list the list of beans in a slot.
+	 *
+	 * @param slot the slot number
+	 * @param list the list
+	 */
+	public void put(int slot, List<Bean> list) {
+		if (slot < low || slot >= low + lists.size()) {
+			grow(slot);
+		}
+		lists.set(slot - low, list);
+	}
+
+	/**
+	 * Takes the list of beans out of a slot, which is left without a list.
+	 *
+	 * @param slot the slot number
+	 * @return the list, or null if the slot had none
+	 */
+	public List<Bean> remove(int slot) {
+		List<Bean> list = get(slot);
+		if (list != null) {
+			lists.set(slot - low, null);
+		}
+		return list;
+	}
+
+	/**
+	 * Widens the window to cover the given slot, to at least twice its size.
+	 *
+	 * @param slot the slot to cover
+	 */
+	private void grow(int slot) {
+		int size = lists.size();
+		int newLow = size == 0 ? slot : Math.min(low, slot);
+		int newHigh = size == 0 ? slot + 1 : Math.max(low + size, slot + 1);
+		// put the extra room on the side that grew, then clamp to the board
+		long extra = Math.max(2L * size, MIN_WINDOW) - (newHigh - newLow);
+		if (extra > 0) {
+			if (slot < low) {
+				newLow = (int) Math.max(newLow - extra, 0);
+			} else {
+				newHigh = (int) Math.min(newHigh + extra, slotCount);
+			}
+		}
+		newLow = Math.max(newLow, 0);
+		newHigh = Math.min(newHigh, slotCount);
+		List<List<Bean>> newLists = new ArrayList<>(Collections.nCopies(newHigh - newLow, (List<Bean>) null));
+		for (int i = 0; i < size; i++) {
+			newLists.set(low - newLow + i, lists.get(i));
+		}
+		lists = newLists;
+		low = newLow;
+	}
+}
@@ -0,0 +1,41 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class SlotListsTest {
+
+	@Test
+	public void startsWithoutLists() {
+		SlotLists lists = new SlotLists(1000000);
+		assertEquals(lists.getLowSlot(), lists.getHighSlot());
+		assertNull(lists.get(500000));
+	}
+
+	@Test
+	public void growsBothWays() {
+		SlotLists lists = new SlotLists(1000000);
+		List<Bean> middle = lists.getOrCreate(500000);
+		List<Bean> high = lists.getOrCreate(500100);
+		List<Bean> low = lists.getOrCreate(499000);
+		assertSame(middle, lists.get(500000));
+		assertSame(high, lists.get(500100));
+		assertSame(low, lists.get(499000));
+		assertNull(lists.get(499999));
+		assertTrue(lists.getLowSlot() <= 499000);
+		assertTrue(lists.getHighSlot() > 500100);
+		// the window covers the slots with beans, not the board
+		assertTrue(lists.getHighSlot() - lists.getLowSlot() < 10000);
+	}
+
+	@Test
+	public void removeLeavesSlotWithoutList() {
+		SlotLists lists = new SlotLists(10);
+		List<Bean> list = lists.getOrCreate(3);
+		assertSame(list, lists.remove(3));
+		assertNull(lists.get(3));
+		assertNull(lists.remove(3));
+		assertNotSame(list, lists.getOrCreate(3));
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * SlotStatistics: Running statistics of the slot numbers of landed beans. Beans
+ * are added and removed in O(1) by keeping the count and the power sums of their
+ * slot numbers, from which the mean, variance, standard deviation, skewness and
+ * kurtosis are computed on demand. The sums are taken around the middle slot
+ * rather than 0 to keep rounding errors small on wide boards.
+ */
+
+public class SlotStatistics {
+
+	private final double origin;
+	private long count;
+	private double sum1;
+	private double sum2;
+	private double sum3;
+	private double sum4;
+
+	/**
+	 * Constructor - creates empty statistics for a machine.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 */
+	SlotStatistics(int slotCount) {
+		this.origin = (slotCount - 1) / 2.0;
+	}
+
+	/**
+	 * Adds beans that landed in a slot. A negative number removes beans.
+	 * 
+	 * @param slot  the slot number
+	 * @param beans the number of beans
+	 */
+	public void add(int slot, long beans) {
+		double d = slot - origin;
+		double d2 = d * d;
+		count += beans;
+		sum1 += beans * d;
+		sum2 += beans * d2;
+		sum3 += beans * d2 * d;
+		sum4 += beans * d2 * d2;
+	}
+
+	/**
+	 * Removes all beans.
+	 */
+	public void clear() {
+		count = 0;
+		sum1 = 0;
+		sum2 = 0;
+		sum3 = 0;
+		sum4 = 0;
+	}
+
+	/**
+	 * @return the number of beans
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the sum of the slot numbers of all beans
+	 */
+	public double getSum() {
+		return sum1 + count * origin;
+	}
+
+	/**
+	 * @return the average slot number, or 0 if there are no beans
+	 */
+	public double getMean() {
+		return count > 0 ? origin + sum1 / count : 0.0;
+	}
+
+	/**
+	 * @return the population variance of the slot numbers, or 0 if there are no beans
+	 */
+	public double getVariance() {
+		if (count == 0) {
+			return 0.0;
+		}
+		double m = sum1 / count;
+		return Math.max(sum2 / count - m * m, 0.0);
+	}
+
+	/**
+	 * @return the population standard deviation of the slot numbers
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return the skewness of the slot numbers, or 0 if they are all the same
+	 */
+	public double getSkewness() {
+		double variance = getVariance();
+		if (variance == 0) {
+			return 0.0;
+		}
+		double m = sum1 / count;
+		double m3 = sum3 / count - 3 * m * sum2 / count + 2 * m * m * m;
+		return m3 / Math.pow(variance, 1.5);
+	}
+
+	/**
+	 * @return the excess kurtosis of the slot numbers (0 for a normal
+	 *         distribution), or 0 if they are all the same
+	 */
+	public double getKurtosis() {
+		double variance = getVariance();
+		if (variance == 0) {
+			return 0.0;
+		}
+		double m = sum1 / count;
+		double m4 = sum4 / count - 4 * m * sum3 / count + 6 * m * m * sum2 / count - 3 * m * m * m * m;
+		return m4 / (variance * variance) - 3;
+	}
+}
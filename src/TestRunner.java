@@ -18,6 +18,12 @@ public class TestRunner {
 		// ADD ANY CLASSES YOU WISH TO TEST HERE
 		classesToTest.add(BeanCounterLogicTest.class);
 		classesToTest.add(BeanTest.class);
+		classesToTest.add(SlotFenwickTreeTest.class);
+		classesToTest.add(SlotListsTest.class);
+		classesToTest.add(BeanStoreTest.class);
+		classesToTest.add(MappedBeanStoreTest.class);
+		classesToTest.add(LuckStepKernelTest.class);
+		classesToTest.add(CounterBeanRandomTest.class);
 
 		// For all test classes added, loop through and use JUnit
 		// to run them.
@@ -0,0 +1,69 @@
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Insets;
+
+/**
+ * WrapLayout: A FlowLayout whose preferred size counts the rows its components
+ * wrap onto. A plain FlowLayout asks for a single row, so in the south of a
+ * BorderLayout the buttons that wrap onto a second row are cut off.
+ */
+
+public class WrapLayout extends FlowLayout {
+
+	@Override
+	public Dimension preferredLayoutSize(Container target) {
+		return layoutSize(target, true);
+	}
+
+	@Override
+	public Dimension minimumLayoutSize(Container target) {
+		return layoutSize(target, false);
+	}
+
+	/**
+	 * Works out the size of the target when its components are wrapped to the
+	 * width it is given.
+	 *
+	 * @param target    the container being laid out
+	 * @param preferred whether to use the preferred (or minimum) component sizes
+	 * @return the size of the target
+	 */
+	private Dimension layoutSize(Container target, boolean preferred) {
+		synchronized (target.getTreeLock()) {
+			// before the target is laid out, it gets the width of its parent
+			int targetWidth = target.getWidth();
+			if (targetWidth == 0 && target.getParent() != null) {
+				targetWidth = target.getParent().getWidth();
+			}
+			if (targetWidth == 0) {
+				targetWidth = Integer.MAX_VALUE;
+			}
+			Insets insets = target.getInsets();
+			int maxWidth = targetWidth - insets.left - insets.right - 2 * getHgap();
+			int width = 0;
+			int height = 0;
+			int rowWidth = 0;
+			int rowHeight = 0;
+			for (Component c : target.getComponents()) {
+				if (!c.isVisible()) {
+					continue;
+				}
+				Dimension d = preferred ? c.getPreferredSize() : c.getMinimumSize();
+				if (rowWidth > 0 && rowWidth + getHgap() + d.width > maxWidth) {
+					width = Math.max(width, rowWidth);
+					height += rowHeight + getVgap();
+					rowWidth = 0;
+					rowHeight = 0;
+				}
+				rowWidth += (rowWidth > 0 ? getHgap() : 0) + d.width;
+				rowHeight = Math.max(rowHeight, d.height);
+			}
+			width = Math.max(width, rowWidth);
+			height += rowHeight;
+			return new Dimension(width + insets.left + insets.right + 2 * getHgap(),
+					height + insets.top + insets.bottom + 2 * getVgap());
+		}
+	}
+}
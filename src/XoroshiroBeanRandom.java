@@ -0,0 +1,70 @@
+/**
+ * XoroshiroBeanRandom: A fast, seedable, non-synchronized BeanRandom using the
+ * xoroshiro128** algorithm by Blackman and Vigna. All 64 bits of its output are
+ * of good quality, which Bean.countRights() relies on. The 128-bit state is
+ * seeded from a single long with SplitMix64.
+ */
+
+public class XoroshiroBeanRandom implements BeanRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long s0;
+	private long s1;
+
+	/**
+	 * Constructor - creates a generator with a seed that differs on every call.
+	 */
+	XoroshiroBeanRandom() {
+		this(System.nanoTime() ^ mix(System.identityHashCode(new Object())));
+	}
+
+	/**
+	 * Constructor - creates a generator that always gives the same numbers for
+	 * the same seed.
+	 * 
+	 * @param seed the seed
+	 */
+	XoroshiroBeanRandom(long seed) {
+		s0 = mix(seed + GOLDEN_GAMMA);
+		s1 = mix(seed + 2 * GOLDEN_GAMMA);
+		if ((s0 | s1) == 0) {
+			// the all-zero state would only ever give zeros
+			s1 = GOLDEN_GAMMA;
+		}
+	}
+
+	/**
+	 * The SplitMix64 finalizer, which scrambles a long into a well distributed
+	 * one.
+	 * 
+	 * @param z the long to scramble
+	 * @return the scrambled long
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public long nextLong() {
+		long a = s0;
+		long b = s1;
+		long result = Long.rotateLeft(a * 5, 7) * 9;
+		b ^= a;
+		s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+		s1 = Long.rotateLeft(b, 37);
+		return result;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	@Override
+	public BeanRandom split() {
+		return new XoroshiroBeanRandom(nextLong());
+	}
+}